@@ -0,0 +1,11 @@
+package io.bomtech.gateway.config;
+
+import io.bomtech.gateway.loadbalancer.ConsistentHashLoadBalancerConfiguration;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.context.annotation.Configuration;
+
+// device-management-service delivers commands to local sockets only: hash each user onto a stable node, other services stay round-robin
+@Configuration
+@LoadBalancerClient(name = "device-management-service", configuration = ConsistentHashLoadBalancerConfiguration.class)
+public class LoadBalancerConfig {
+}
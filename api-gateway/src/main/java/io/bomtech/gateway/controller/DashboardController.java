@@ -0,0 +1,175 @@
+package io.bomtech.gateway.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import io.bomtech.gateway.util.JwtUtil;
+import io.bomtech.gateway.util.RevocationList;
+import io.bomtech.gateway.util.VerifiedClaims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@code GET /dashboard}: the profile, devices and backed-up accounts of the caller in one response, so a page
+ * load over a mobile network needs a single round trip.
+ * <p>
+ * The sections are fetched in parallel through this gateway's own routes (loopback), so they get the same
+ * response cache, rate limits, bulkheads and circuit breakers as direct calls. Every section is reported on
+ * its own: {@code ok} with {@code data}, {@code error} with the downstream status, {@code timeout}, or
+ * {@code too_large} when the body exceeds the section's byte budget ({@code app.dashboard.budget.*}); one
+ * failing service doesn't fail the page. {@code ?sections=devices,accounts} limits what is fetched.
+ */
+@RestController
+@Slf4j
+public class DashboardController {
+
+    private final JwtUtil jwtUtil;
+    private final RevocationList revocationList;
+    private final MeterRegistry meterRegistry;
+    private final Duration sectionTimeout;
+    // Section name -> downstream path and byte budget, in response order
+    private final Map<String, SectionSource> sources = new LinkedHashMap<>();
+    private volatile WebClient loopback;
+
+    public DashboardController(JwtUtil jwtUtil, RevocationList revocationList, MeterRegistry meterRegistry,
+                               @Value("${app.dashboard.section-timeout:5s}") Duration sectionTimeout,
+                               @Value("${app.dashboard.budget.profile:16KB}") DataSize profileBudget,
+                               @Value("${app.dashboard.budget.devices:256KB}") DataSize devicesBudget,
+                               @Value("${app.dashboard.budget.accounts:1MB}") DataSize accountsBudget) {
+        this.jwtUtil = jwtUtil;
+        this.revocationList = revocationList;
+        this.meterRegistry = meterRegistry;
+        this.sectionTimeout = sectionTimeout;
+        addSource("profile", "/users/me", profileBudget);
+        addSource("devices", "/api/devices/user/me", devicesBudget);
+        addSource("accounts", "/api/devices/user/me/accounts", accountsBudget);
+    }
+
+    // The outcome counters of a section are registered once, here
+    private void addSource(String name, String path, DataSize budget) {
+        Map<String, Counter> served = new HashMap<>();
+        for (String status : Section.STATUSES) {
+            served.put(status, Counter.builder("gateway.dashboard.sections")
+                    .description("Dashboard sections served, by section and outcome")
+                    .tag("section", name)
+                    .tag("status", status)
+                    .register(meterRegistry));
+        }
+        sources.put(name, new SectionSource(path, (int) budget.toBytes(), served));
+    }
+
+    // The actual port, also when server.port is 0; the management server has its own namespace
+    @EventListener
+    public void onServerStarted(ReactiveWebServerInitializedEvent event) {
+        if (event.getApplicationContext().getServerNamespace() == null) {
+            loopback = WebClient.builder().baseUrl("http://127.0.0.1:" + event.getWebServer().getPort()).build();
+        }
+    }
+
+    @GetMapping("/dashboard")
+    public Mono<ResponseEntity<Map<String, Section>>> dashboard(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam(required = false) List<String> sections) {
+        // Routed requests are checked by AuthenticationFilter; this handler is not routed, so check here once
+        // instead of letting every section come back 401
+        String token = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+        VerifiedClaims claims = jwtUtil.verify(token).orElse(null);
+        if (claims == null || revocationList.isRevoked(claims.sessionId())) {
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+
+        List<String> requested = sources.keySet().stream()
+                .filter(name -> sections == null || sections.isEmpty() || sections.contains(name))
+                .toList();
+        return Flux.fromIterable(requested)
+                .flatMapSequential(name -> fetch(name, sources.get(name), authorization)
+                        .map(section -> Map.entry(name, section)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new)
+                .map(body -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noStore().cachePrivate())
+                        .body(body));
+    }
+
+    private Mono<Section> fetch(String name, SectionSource source, String authorization) {
+        return loopback.get()
+                .uri(source.path())
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .exchangeToMono(response -> {
+                    int status = response.statusCode().value();
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        return response.releaseBody().thenReturn(Section.error(status));
+                    }
+                    if (response.headers().contentLength().orElse(0) > source.budget()) {
+                        return response.releaseBody().thenReturn(Section.tooLarge(source.budget()));
+                    }
+                    // Stops reading (and fails) as soon as the budget is exceeded, also for chunked bodies
+                    return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()), source.budget())
+                            .map(buffer -> {
+                                String json = buffer.toString(StandardCharsets.UTF_8);
+                                DataBufferUtils.release(buffer);
+                                return Section.ok(StringUtils.hasText(json) ? json : "null");
+                            })
+                            .defaultIfEmpty(Section.ok("null"));
+                })
+                .timeout(sectionTimeout)
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.just(Section.tooLarge(source.budget())))
+                .onErrorResume(TimeoutException.class, e -> Mono.just(Section.TIMEOUT))
+                .onErrorResume(e -> {
+                    log.warn("Dashboard section {} failed: {}", name, e.getMessage());
+                    return Mono.just(Section.error(HttpStatus.BAD_GATEWAY.value()));
+                })
+                .doOnNext(section -> source.served().get(section.status()).increment());
+    }
+
+    private record SectionSource(String path, int budget, Map<String, Counter> served) {
+    }
+
+    /**
+     * One section of the dashboard response; {@code data} is the downstream JSON body, passed through as is.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Section(String status, @JsonRawValue String data, Integer code, Integer limit) {
+
+        static final List<String> STATUSES = List.of("ok", "error", "timeout", "too_large");
+        static final Section TIMEOUT = new Section("timeout", null, null, null);
+
+        static Section ok(String json) {
+            return new Section("ok", json, null, null);
+        }
+
+        static Section error(int code) {
+            return new Section("error", null, code, null);
+        }
+
+        static Section tooLarge(int limit) {
+            return new Section("too_large", null, null, limit);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.bomtech.gateway.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Fast responses for routes whose circuit breaker is open or whose downstream call failed or timed out
+ * (the CircuitBreaker filters forward here). Clients get a 503 right away instead of waiting on a
+ * service that is known to be unhealthy.
+ */
+@RestController
+@RequestMapping("/fallback")
+public class FallbackController {
+
+    @RequestMapping("/{service}")
+    public Mono<ResponseEntity<Map<String, String>>> fallback(@PathVariable String service) {
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "10")
+                .body(Map.of(
+                    "error", "Service temporarily unavailable",
+                    "service", service
+                )));
+    }
+}
@@ -0,0 +1,154 @@
+package io.bomtech.gateway.filter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes one JSON line per request to the {@code access} logger: method, path, route ID, status, latency,
+ * upstream, request/response bytes and a configurable set of headers.
+ * <p>
+ * Successful fast requests are sampled ({@code app.access-log.sample-rate}); server errors and requests
+ * slower than {@code app.access-log.slow-threshold} are always logged. Values of sensitive headers and of the
+ * WebSocket {@code token} query parameter are never written. The logger goes through an async, bounded
+ * appender that drops lines instead of blocking the event loop (see logback-spring.xml).
+ */
+@Component
+@RequiredArgsConstructor
+public class AccessLogFilter implements GlobalFilter, Ordered {
+
+    private static final Logger accessLog = LoggerFactory.getLogger("access");
+    private static final String REDACTED = "[REDACTED]";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.access-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.access-log.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${app.access-log.slow-threshold:1s}")
+    private Duration slowThreshold;
+
+    @Value("${app.access-log.headers:User-Agent,X-Forwarded-For}")
+    private List<String> loggedHeaders;
+
+    @Value("${app.access-log.redacted-headers:Authorization,Cookie,Set-Cookie,Proxy-Authorization}")
+    private List<String> redactedHeaderNames;
+
+    // Header names are case-insensitive
+    private final Set<String> redactedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    @PostConstruct
+    public void init() {
+        redactedHeaders.addAll(redactedHeaderNames);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled || !accessLog.isInfoEnabled()) {
+            return chain.filter(exchange);
+        }
+        long startNanos = System.nanoTime();
+        AtomicLong bytesOut = new AtomicLong();
+        ServerHttpResponse countingResponse = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                return super.writeWith(Flux.from(body).doOnNext(buffer -> bytesOut.addAndGet(buffer.readableByteCount())));
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                return super.writeAndFlushWith(Flux.from(body).map(part ->
+                        Flux.from(part).doOnNext(buffer -> bytesOut.addAndGet(buffer.readableByteCount()))));
+            }
+        };
+        ServerWebExchange loggedExchange = exchange.mutate().response(countingResponse).build();
+
+        return chain.filter(loggedExchange)
+                .doFinally(signal -> log(loggedExchange, startNanos, bytesOut.get()));
+    }
+
+    private void log(ServerWebExchange exchange, long startNanos, long bytesOut) {
+        long latencyNanos = System.nanoTime() - startNanos;
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        int statusCode = status != null ? status.value() : 0;
+        boolean alwaysLog = statusCode >= 500 || latencyNanos >= slowThreshold.toNanos();
+        if (!alwaysLog && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        URI upstream = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("method", request.getMethod().name());
+        entry.put("path", request.getPath().value()); // Query string left out: it can carry the WebSocket token
+        entry.put("route", route != null ? route.getId() : null);
+        entry.put("status", statusCode);
+        entry.put("latencyMs", TimeUnit.NANOSECONDS.toMicros(latencyNanos) / 1000.0);
+        entry.put("upstream", upstream != null ? upstream.getScheme() + "://" + upstream.getAuthority() : null);
+        entry.put("bytesIn", Math.max(0, request.getHeaders().getContentLength()));
+        entry.put("bytesOut", bytesOut);
+        if (!loggedHeaders.isEmpty()) {
+            entry.put("headers", headers(request.getHeaders()));
+        }
+
+        try {
+            accessLog.info(objectMapper.writeValueAsString(entry));
+        } catch (JsonProcessingException e) {
+            // Cannot happen for a map of strings and numbers
+            accessLog.warn("Could not write access log entry for {}: {}", request.getPath(), e.getMessage());
+        }
+    }
+
+    private Map<String, String> headers(HttpHeaders headers) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String name : loggedHeaders) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                values.put(name, redactedHeaders.contains(name) ? REDACTED : value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int getOrder() {
+        // Outermost filter, so rejected requests (401 from AuthenticationFilter) are logged with their latency
+        return -200;
+    }
+}
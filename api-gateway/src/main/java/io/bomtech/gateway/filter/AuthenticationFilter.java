@@ -1,6 +1,8 @@
 package io.bomtech.gateway.filter; // Adjust package if needed
 
 import io.bomtech.gateway.util.JwtUtil; // Adjust import
+import io.bomtech.gateway.util.RevocationList;
+import io.bomtech.gateway.util.VerifiedClaims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
@@ -15,6 +17,7 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Optional;
 
 @Component
 public class AuthenticationFilter implements GlobalFilter, Ordered {
@@ -22,11 +25,15 @@ public class AuthenticationFilter implements GlobalFilter, Ordered {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private RevocationList revocationList;
+
     // Define public paths that don't require authentication
     private final List<String> publicApiEndpoints = List.of(
             "/auth/register",
             "/auth/login",
-            "/auth/refresh"
+            "/auth/refresh",
+            "/auth/logout"
     );
 
     @Override
@@ -58,17 +65,20 @@ public class AuthenticationFilter implements GlobalFilter, Ordered {
              return onError(exchange, HttpStatus.UNAUTHORIZED); // Invalid header format
         }
 
-        // Validate the JWT
-        if (jwt == null || !jwtUtil.validateToken(jwt)) {
+        // Validate the JWT once; repeated requests with the same token are served from the claims cache
+        Optional<VerifiedClaims> claims = jwtUtil.verify(jwt);
+        if (claims.isEmpty()) {
              return onError(exchange, HttpStatus.UNAUTHORIZED); // Invalid or expired token
         }
+        // Logged out or revoked session; checked in memory, the list is synced from auth-service in the background
+        if (revocationList.isRevoked(claims.get().sessionId())) {
+             return onError(exchange, HttpStatus.UNAUTHORIZED);
+        }
 
         // Optional: Add username or claims to request headers for downstream services
-        String username = jwtUtil.getUsernameFromToken(jwt);
-        String role = jwtUtil.getRoleFromToken(jwt); // Extract role
         ServerHttpRequest modifiedRequest = exchange.getRequest().mutate()
-               .header("X-User-Name", username)
-               .header("X-User-Role", role) // Add role to header
+               .header("X-User-Name", claims.get().username())
+               .header("X-User-Role", claims.get().role()) // Add role to header
                .build();
         ServerWebExchange modifiedExchange = exchange.mutate().request(modifiedRequest).build();
         return chain.filter(modifiedExchange);
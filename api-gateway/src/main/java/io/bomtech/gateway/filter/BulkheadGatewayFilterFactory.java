@@ -0,0 +1,94 @@
+package io.bomtech.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of in-flight requests of a route, so one slow route (e.g. backup uploads) cannot hold
+ * every connection and event-loop slot the other routes to the same or other services need:
+ * <pre>
+ * filters:
+ *   - name: Bulkhead
+ *     args:
+ *       name: device-upload   # Metric tag
+ *       max-concurrent: 20
+ * </pre>
+ * Requests over the limit are rejected at once with 503 and Retry-After instead of queueing.
+ * Exposes {@code gateway.bulkhead.active}/{@code gateway.bulkhead.max} gauges and a
+ * {@code gateway.bulkhead.rejected} counter, tagged with the bulkhead name. The in-flight count is held by the
+ * factory per name, so it survives route refreshes (every Eureka registry fetch), which re-create the filters.
+ */
+@Component
+public class BulkheadGatewayFilterFactory extends AbstractGatewayFilterFactory<BulkheadGatewayFilterFactory.Config> {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, State> bulkheads = new ConcurrentHashMap<>();
+
+    public BulkheadGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("name", "maxConcurrent");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        State state = bulkheads.computeIfAbsent(config.getName(), this::register);
+        state.max().set(config.getMaxConcurrent());
+
+        return (exchange, chain) -> {
+            if (state.active().incrementAndGet() > state.max().get()) {
+                state.active().decrementAndGet();
+                state.rejected().increment();
+                ServerHttpResponse response = exchange.getResponse();
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                return response.setComplete();
+            }
+            // Released whether the request completes, fails or is cancelled
+            return chain.filter(exchange)
+                    .doFinally(signal -> state.active().decrementAndGet());
+        };
+    }
+
+    private State register(String name) {
+        State state = new State(new AtomicInteger(), new AtomicInteger(), Counter.builder("gateway.bulkhead.rejected")
+                .description("Requests rejected because the bulkhead was full")
+                .tag("name", name)
+                .register(meterRegistry));
+        Gauge.builder("gateway.bulkhead.active", state.active(), AtomicInteger::get)
+                .description("Requests currently in flight through the bulkhead")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.bulkhead.max", state.max(), AtomicInteger::get)
+                .description("Concurrency limit of the bulkhead")
+                .tag("name", name)
+                .register(meterRegistry);
+        return state;
+    }
+
+    private record State(AtomicInteger active, AtomicInteger max, Counter rejected) {
+    }
+
+    @Data
+    public static class Config {
+        private String name = "default";
+        private int maxConcurrent = 100;
+    }
+}
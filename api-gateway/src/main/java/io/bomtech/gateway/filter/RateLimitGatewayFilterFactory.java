@@ -0,0 +1,175 @@
+package io.bomtech.gateway.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory token-bucket rate limiting per user, device or client IP, configured per route:
+ * <pre>
+ * filters:
+ *   - name: RateLimit
+ *     args:
+ *       key: DEVICE      # USER (X-User-Name), DEVICE ({deviceId} path variable or query param) or IP
+ *       rate: 0.2        # Requests per second
+ *       burst: 3         # Requests allowed at once on top of the rate
+ * </pre>
+ * Each key's bucket is one theoretical-arrival-time value updated with CAS (GCRA), held in a Caffeine map
+ * (a striped ConcurrentHashMap underneath) whose idle entries are evicted after
+ * {@code app.rate-limit.idle-eviction}. Requests without the configured key fall back to the client IP.
+ * Buckets are held by the factory per route id, so they survive route refreshes (every Eureka registry fetch),
+ * which re-create the filters.
+ * Throttled requests get 429 with Retry-After; decisions are counted in {@code gateway.ratelimit.requests}.
+ */
+@Component
+public class RateLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<RateLimitGatewayFilterFactory.Config> {
+
+    private static final String USER_HEADER = "X-User-Name";
+    private static final String REAL_IP_HEADER = "X-Real-IP"; // Set by nginx-proxy from the client address
+
+    private final MeterRegistry meterRegistry;
+    private final Duration idleEviction;
+    private final long maxKeys;
+    private final Map<String, Cache<String, AtomicLong>> bucketsByRoute = new ConcurrentHashMap<>();
+    // Decision counters per route and key type, registered once instead of looked up on every request
+    private final Map<String, Map<KeyType, Decisions>> decisionsByRoute = new ConcurrentHashMap<>();
+
+    public RateLimitGatewayFilterFactory(MeterRegistry meterRegistry,
+                                         @Value("${app.rate-limit.idle-eviction:10m}") Duration idleEviction,
+                                         @Value("${app.rate-limit.max-keys:100000}") long maxKeys) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        this.idleEviction = idleEviction;
+        this.maxKeys = maxKeys;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("key", "rate", "burst");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getRate() <= 0) {
+            throw new IllegalArgumentException("RateLimit rate must be positive, was " + config.getRate());
+        }
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.getRate());
+        long burstToleranceNanos = intervalNanos * Math.max(config.getBurst() - 1, 0);
+
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : "unknown";
+            String key = resolveKey(config.getKey(), exchange);
+            Cache<String, AtomicLong> buckets = bucketsByRoute.computeIfAbsent(routeId, id -> Caffeine.newBuilder()
+                    .maximumSize(maxKeys)
+                    .expireAfterAccess(idleEviction)
+                    .build());
+            Decisions decisions = decisionsByRoute.computeIfAbsent(routeId, id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(config.getKey(), keyType -> registerDecisions(routeId, keyType));
+
+            long waitNanos = reserve(buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE)), System.nanoTime(),
+                    intervalNanos, burstToleranceNanos);
+            if (waitNanos > 0) {
+                decisions.throttled().increment();
+                ServerHttpResponse response = exchange.getResponse();
+                response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                return response.setComplete();
+            }
+            decisions.allowed().increment();
+            return chain.filter(exchange);
+        };
+    }
+
+    // Takes a token if one is available; otherwise returns how long until the next one, without taking it
+    static long reserve(AtomicLong theoreticalArrivalNanos, long now, long intervalNanos, long burstToleranceNanos) {
+        while (true) {
+            long tat = theoreticalArrivalNanos.get();
+            long base = Math.max(tat, now);
+            long wait = base - burstToleranceNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(tat, base + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    private static String resolveKey(KeyType keyType, ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String key = switch (keyType) {
+            case USER -> request.getHeaders().getFirst(USER_HEADER); // Set by AuthenticationFilter from the verified token
+            case DEVICE -> deviceId(exchange);
+            case IP -> null;
+        };
+        return StringUtils.hasText(key) ? keyType.name() + ":" + key : "IP:" + clientIp(request);
+    }
+
+    // {deviceId} of the route's Path predicate, or the deviceId query parameter of WebSocket handshakes
+    private static String deviceId(ServerWebExchange exchange) {
+        String deviceId = ServerWebExchangeUtils.getUriTemplateVariables(exchange).get("deviceId");
+        return deviceId != null ? deviceId : exchange.getRequest().getQueryParams().getFirst("deviceId");
+    }
+
+    private static String clientIp(ServerHttpRequest request) {
+        String realIp = request.getHeaders().getFirst(REAL_IP_HEADER);
+        if (StringUtils.hasText(realIp)) {
+            return realIp;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress != null && remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : "unknown";
+    }
+
+    private Decisions registerDecisions(String routeId, KeyType keyType) {
+        return new Decisions(counter(routeId, keyType, "allowed"), counter(routeId, keyType, "throttled"));
+    }
+
+    private Counter counter(String routeId, KeyType keyType, String outcome) {
+        return Counter.builder("gateway.ratelimit.requests")
+                .description("Requests checked by the RateLimit filter, by route and outcome")
+                .tag("route", routeId)
+                .tag("key", keyType.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Decisions(Counter allowed, Counter throttled) {
+    }
+
+    public enum KeyType {
+        USER, DEVICE, IP
+    }
+
+    @Data
+    public static class Config {
+        private KeyType key = KeyType.USER;
+        private double rate = 10; // Requests per second
+        private int burst = 20;
+    }
+}
@@ -0,0 +1,251 @@
+package io.bomtech.gateway.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived in-memory cache of per-user JSON GET responses, for read endpoints the dashboard calls on every
+ * navigation and reconnect:
+ * <pre>
+ * filters:
+ *   - name: ResponseCache
+ *     args:
+ *       ttl: 5s
+ *       paths: /api/devices/user/me, /api/devices/user/me/accounts
+ * </pre>
+ * Entries are keyed by user (X-User-Name) and path with query, and live at most {@code ttl}. Any other method
+ * on the route from the same user (POST, PUT, PATCH, DELETE) invalidates that user's entries of the route, by
+ * moving the user to a new generation; responses of reads that started before the change are never served.
+ * Cached responses carry an ETag, so a browser revalidating with If-None-Match gets 304 without a body.
+ * Only 200 responses with a JSON body up to {@code max-entry-size} are cached, and only requests that prefer
+ * JSON use the cache; streaming reads ({@code Accept: application/x-ndjson} or {@code text/event-stream}) pass
+ * through. Results are counted in {@code gateway.response.cache{route,result}}.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    private static final String USER_HEADER = "X-User-Name";
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+    // Browsers keep the response but revalidate it with the ETag on every use
+    private static final String CACHE_CONTROL = "private, no-cache";
+
+    private final MeterRegistry meterRegistry;
+    // Held here rather than in the filters, which are re-created on every route refresh (Eureka registry fetch)
+    private final Map<String, RouteCache> cachesByRoute = new ConcurrentHashMap<>();
+
+    public ResponseCacheGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        List<PathPattern> patterns = config.getPaths().stream()
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+        // Must wrap the response before NettyWriteResponseFilter captures it, like ModifyResponseBody does
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String user = request.getHeaders().getFirst(USER_HEADER); // Set by AuthenticationFilter
+            if (!StringUtils.hasText(user)) {
+                return chain.filter(exchange);
+            }
+            String routeId = routeId(exchange);
+            RouteCache cache = cachesByRoute.computeIfAbsent(routeId, id -> new RouteCache(config, results(id)));
+            HttpMethod method = request.getMethod();
+            if (method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS) {
+                cache.invalidate(user);
+                return chain.filter(exchange);
+            }
+            PathContainer path = request.getPath().pathWithinApplication();
+            if (method != HttpMethod.GET || patterns.stream().noneMatch(pattern -> pattern.matches(path))) {
+                return chain.filter(exchange);
+            }
+            if (!acceptsJson(request)) {
+                // Streaming (NDJSON, SSE) reads of the same path must not be answered with a cached JSON array
+                cache.results().bypass().increment();
+                return chain.filter(exchange);
+            }
+
+            String key = user + '|' + cache.generation(user) + '|' + request.getURI().getRawPath()
+                    + (request.getURI().getRawQuery() != null ? "?" + request.getURI().getRawQuery() : "");
+            CachedResponse cached = cache.responses().getIfPresent(key);
+            if (cached != null) {
+                return writeCached(exchange, cached, cache.results());
+            }
+            cache.results().miss().increment();
+            ServerHttpResponse response = exchange.getResponse();
+            response.getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+            ServerHttpResponseDecorator caching = new ServerHttpResponseDecorator(response) {
+                @Override
+                public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                    boolean ok = getStatusCode() != null && getStatusCode().value() == HttpStatus.OK.value();
+                    if (!ok || !isJson(getHeaders().getContentType())) {
+                        return super.writeWith(body);
+                    }
+                    return DataBufferUtils.join(Flux.from(body)).flatMap(joined -> {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        DataBufferUtils.release(joined);
+                        CachedResponse entry = new CachedResponse(bytes, getHeaders().getContentType(), etag(bytes));
+                        if (bytes.length <= config.getMaxEntrySize()) {
+                            cache.responses().put(key, entry);
+                        }
+                        getHeaders().setETag(entry.etag());
+                        getHeaders().setCacheControl(CACHE_CONTROL);
+                        if (request.getHeaders().getIfNoneMatch().contains(entry.etag())) {
+                            // Unchanged since the browser's copy, even though it had left this cache
+                            setStatusCode(HttpStatus.NOT_MODIFIED);
+                            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                            return setComplete();
+                        }
+                        getHeaders().setContentLength(bytes.length);
+                        return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                    });
+                }
+            };
+            return chain.filter(exchange.mutate().response(caching).build());
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, Results results) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(CACHE_STATUS_HEADER, "HIT");
+        headers.setETag(cached.etag());
+        headers.setCacheControl(CACHE_CONTROL);
+        if (exchange.getRequest().getHeaders().getIfNoneMatch().contains(cached.etag())) {
+            results.notModified().increment();
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        results.hit().increment();
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentType(cached.contentType());
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                || contentType.getSubtype().endsWith("+json"));
+    }
+
+    // No Accept, or JSON (or */*) as the client's first choice; the downstream then answers with JSON too
+    private static boolean acceptsJson(ServerHttpRequest request) {
+        List<MediaType> accept = request.getHeaders().getAccept();
+        return accept.isEmpty() || accept.get(0).isWildcardType() || isJson(accept.get(0));
+    }
+
+    private static String etag(byte[] body) {
+        return "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    private Results results(String routeId) {
+        return new Results(counter(routeId, "hit"), counter(routeId, "miss"), counter(routeId, "not_modified"),
+                counter(routeId, "bypass"));
+    }
+
+    private Counter counter(String routeId, String result) {
+        return Counter.builder("gateway.response.cache")
+                .description("GET requests seen by the ResponseCache filter, by route and result")
+                .tag("route", routeId)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cached responses of one route, and the current generation of each user. Generations are drawn from one
+     * sequence so a value is never reused, even after the user's generation entry was evicted.
+     */
+    private static final class RouteCache {
+        private final Cache<String, CachedResponse> responses;
+        private final Cache<String, AtomicLong> generations;
+        private final AtomicLong sequence = new AtomicLong();
+        private final Results results;
+
+        RouteCache(Config config, Results results) {
+            this.results = results;
+            responses = Caffeine.newBuilder()
+                    .expireAfterWrite(config.getTtl())
+                    .maximumWeight(config.getMaxSize())
+                    .weigher((String key, CachedResponse response) -> key.length() + response.body().length)
+                    .build();
+            // Outlives the entries of the generation it holds
+            generations = Caffeine.newBuilder()
+                    .expireAfterAccess(config.getTtl().multipliedBy(2))
+                    .build();
+        }
+
+        Cache<String, CachedResponse> responses() {
+            return responses;
+        }
+
+        Results results() {
+            return results;
+        }
+
+        long generation(String user) {
+            return generations.get(user, u -> new AtomicLong(sequence.incrementAndGet())).get();
+        }
+
+        void invalidate(String user) {
+            generations.get(user, u -> new AtomicLong()).set(sequence.incrementAndGet());
+        }
+    }
+
+    // Registered once per route, with its cache
+    private record Results(Counter hit, Counter miss, Counter notModified, Counter bypass) {
+    }
+
+    private record CachedResponse(byte[] body, MediaType contentType, String etag) {
+    }
+
+    @Data
+    public static class Config {
+        private Duration ttl = Duration.ofSeconds(5);
+        private List<String> paths = new ArrayList<>(); // Path patterns of the cacheable GET endpoints
+        private long maxSize = 32L * 1024 * 1024; // Bytes of cached bodies per route
+        private int maxEntrySize = 256 * 1024; // Larger bodies are passed through without caching
+    }
+}
@@ -0,0 +1,174 @@
+package io.bomtech.gateway.loadbalancer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks device-management-service instances on a consistent-hash ring keyed by the owning user (X-User-Name,
+ * set by AuthenticationFilter). Commands and status updates are delivered only to sockets on the local node, so
+ * a user's phones, their browser sessions and the HTTP calls that send commands to those phones
+ * ({@code /api/devices/{deviceId}/backup}, exports, transfers) must all meet on one node.
+ * Each instance owns {@code virtualNodes} points on the ring; when an instance joins or leaves only the keys
+ * next to its points move, roughly 1/N of the users, instead of nearly all of them as with modulo hashing.
+ * Sockets of moved users stay where they are until they reconnect; commands sent meanwhile miss them.
+ * <p>
+ * Handshakes without a user are keyed by deviceId; other requests without a user are spread round-robin.
+ */
+@Slf4j
+public class ConsistentHashLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private static final String DEVICE_ID_PARAM = "deviceId";
+    private static final String USER_HEADER = "X-User-Name";
+
+    private final String serviceId;
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final int virtualNodes;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    // Rebuilt only when the set of instances changes
+    private volatile Ring ring = new Ring(List.of(), new long[0], new ServiceInstance[0]);
+
+    public ConsistentHashLoadBalancer(String serviceId, ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
+                                      int virtualNodes) {
+        this.serviceId = serviceId;
+        this.supplierProvider = supplierProvider;
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = supplierProvider.getIfAvailable();
+        if (supplier == null) {
+            return Mono.just(new EmptyResponse());
+        }
+        String key = hashKey(request);
+        return supplier.get(request).next().map(instances -> choose(instances, key));
+    }
+
+    private Response<ServiceInstance> choose(List<ServiceInstance> instances, String key) {
+        if (instances.isEmpty()) {
+            log.warn("No instances available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        if (key == null) {
+            int position = roundRobin.getAndIncrement() & Integer.MAX_VALUE;
+            return new DefaultResponse(instances.get(position % instances.size()));
+        }
+        return new DefaultResponse(ringFor(instances).lookup(hash(key)));
+    }
+
+    // The authenticated user for every request; deviceId for a handshake without one; otherwise null
+    static String hashKey(Request request) {
+        if (!(request.getContext() instanceof RequestDataContext context) || context.getClientRequest() == null) {
+            return null;
+        }
+        RequestData data = context.getClientRequest();
+        HttpHeaders headers = data.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        String user = headers.getFirst(USER_HEADER);
+        if (StringUtils.hasText(user)) {
+            return "user:" + user;
+        }
+        if ("websocket".equalsIgnoreCase(headers.getUpgrade()) && data.getUrl() != null) {
+            String deviceId = UriComponentsBuilder.fromUri(data.getUrl()).build().getQueryParams().getFirst(DEVICE_ID_PARAM);
+            if (StringUtils.hasText(deviceId)) {
+                return "device:" + deviceId;
+            }
+        }
+        return null;
+    }
+
+    private Ring ringFor(List<ServiceInstance> instances) {
+        List<String> ids = instances.stream().map(ConsistentHashLoadBalancer::instanceKey).sorted().toList();
+        Ring current = ring;
+        if (current.instanceIds().equals(ids)) {
+            return current;
+        }
+        Ring rebuilt = Ring.build(instances, virtualNodes);
+        ring = rebuilt;
+        log.info("Rebuilt hash ring for {} with {} instances: {}", serviceId, ids.size(), ids);
+        return rebuilt;
+    }
+
+    private static String instanceKey(ServiceInstance instance) {
+        return StringUtils.hasText(instance.getInstanceId())
+                ? instance.getInstanceId()
+                : instance.getHost() + ":" + instance.getPort();
+    }
+
+    // 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads similar keys (loadgen-000001, ...) evenly
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Ring points sorted by hash, with the owning instance of each point at the same index.
+     */
+    record Ring(List<String> instanceIds, long[] points, ServiceInstance[] owners) {
+
+        static Ring build(List<ServiceInstance> instances, int virtualNodes) {
+            List<ServiceInstance> sorted = new ArrayList<>(instances);
+            sorted.sort(Comparator.comparing(ConsistentHashLoadBalancer::instanceKey));
+            int size = sorted.size() * virtualNodes;
+            long[][] entries = new long[size][2];
+            int n = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                String id = instanceKey(sorted.get(i));
+                for (int v = 0; v < virtualNodes; v++) {
+                    entries[n][0] = hash(id + "#" + v);
+                    entries[n][1] = i;
+                    n++;
+                }
+            }
+            Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+            long[] points = new long[size];
+            ServiceInstance[] owners = new ServiceInstance[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = entries[i][0];
+                owners[i] = sorted.get((int) entries[i][1]);
+            }
+            return new Ring(sorted.stream().map(ConsistentHashLoadBalancer::instanceKey).toList(), points, owners);
+        }
+
+        // First point clockwise from the key's hash, wrapping around at the end
+        ServiceInstance lookup(long keyHash) {
+            int index = Arrays.binarySearch(points, keyHash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index == points.length ? 0 : index];
+        }
+    }
+}
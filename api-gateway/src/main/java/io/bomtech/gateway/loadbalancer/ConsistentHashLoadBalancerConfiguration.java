@@ -0,0 +1,24 @@
+package io.bomtech.gateway.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer for one service's child context, selected with {@code @LoadBalancerClient}.
+ * Deliberately not a {@code @Configuration}: component scanning would make it the default for every service.
+ */
+public class ConsistentHashLoadBalancerConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> consistentHashLoadBalancer(Environment environment,
+                                                                           ObjectProvider<ServiceInstanceListSupplier> suppliers) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        int virtualNodes = environment.getProperty("app.ws-routing.virtual-nodes", Integer.class, 160);
+        return new ConsistentHashLoadBalancer(serviceId, suppliers, virtualNodes);
+    }
+}
@@ -1,76 +1,138 @@
 package io.bomtech.gateway.util; // Adjust package if needed
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.security.Key;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
 
+/**
+ * Verifies access tokens issued by auth-service.
+ * <p>
+ * A token is parsed and HMAC-verified once; the resulting {@link VerifiedClaims} are cached under the
+ * SHA-256 of the token until the token expires (capped by {@code app.jwt.cache.max-ttl}), so a dashboard
+ * polling with the same token costs one hash and one map lookup per request. Invalid tokens are not cached.
+ */
 @Component
 public class JwtUtil {
-    @Value("${jwt.secret}") // Load secret from application.yml/properties
-    private String secretKey;
 
-    private Key key;
+    private static final String SESSION_ID_CLAIM = "sid";
+    // Set by auth-service; refresh tokens are signed with the same key but must never work as bearer tokens
+    private static final String TOKEN_USE_CLAIM = "token_use";
+    private static final String ACCESS_TOKEN_USE = "access";
 
-    @PostConstruct // Initialize the key after the secret string is injected
-    public void init() {
-        this.key = Keys.hmacShaKeyFor(secretKey.getBytes());
+    // Built once; JwtParser is immutable and thread-safe
+    private final JwtParser parser;
+    private final Cache<String, VerifiedClaims> verifiedTokens;
+
+    public JwtUtil(@Value("${jwt.secret}") String secretKey, // Load secret from application.yml/properties
+                   @Value("${app.jwt.cache.max-size:10000}") long cacheMaxSize,
+                   @Value("${app.jwt.cache.max-ttl:5m}") Duration cacheMaxTtl,
+                   MeterRegistry meterRegistry) {
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(secretKey.getBytes()))
+                .build();
+        long maxTtlNanos = cacheMaxTtl.toNanos();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, VerifiedClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedClaims claims, long currentTime) {
+                        // Never outlive the token itself
+                        long untilExpiry = Duration.between(Instant.now(), claims.expiresAt()).toNanos();
+                        return Math.max(0, Math.min(untilExpiry, maxTtlNanos));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.claims");
     }
 
-    public boolean isTokenExpired(String token) {
+    /**
+     * Verifies signature and expiry of a token.
+     *
+     * @return The token's claims, or empty if the token is malformed, forged, expired or not an access token.
+     */
+    public Optional<VerifiedClaims> verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        String key = hash(token);
+        VerifiedClaims cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            // The cache entry may still be live for an instant after exp
+            return cached.isExpired(Instant.now()) ? Optional.empty() : Optional.of(cached);
+        }
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            Date expirationDate = claims.getExpiration();
-            return expirationDate.before(new Date());
-        } catch (JwtException e) {
-            return true; // Token is invalid or expired
+            // Throws ExpiredJwtException for expired tokens, so no separate expiry check is needed
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return Optional.empty(); // auth-service always sets exp; refuse tokens that never expire
+            }
+            if (!ACCESS_TOKEN_USE.equals(claims.get(TOKEN_USE_CLAIM, String.class))) {
+                return Optional.empty(); // A refresh token (or one issued before token_use existed)
+            }
+            VerifiedClaims verified = new VerifiedClaims(claims.getSubject(), claims.get("role", String.class),
+                    expiration.toInstant(), claims.get(SESSION_ID_CLAIM, String.class));
+            verifiedTokens.put(key, verified);
+            return Optional.of(verified);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty(); // Token is invalid or expired
         }
     }
 
+    public boolean isTokenExpired(String token) {
+        return verify(token).isEmpty();
+    }
+
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            return !isTokenExpired(token);
-        } catch (JwtException e) {
-            return false; // Token is invalid or expired
-        }
+        return verify(token).isPresent();
     }
 
     public String getUsernameFromToken(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            return claims.getSubject();
-        } catch (JwtException e) {
-            throw new RuntimeException("Invalid JWT token");
-        }
+        return verify(token).orElseThrow(() -> new RuntimeException("Invalid JWT token")).username();
     }
 
-    // Add this method to extract role from token
-    @SuppressWarnings("deprecation")
     public String getRoleFromToken(String token) {
+        return verify(token).orElseThrow(() -> new RuntimeException("Invalid JWT token")).role();
+    }
+
+    // Keys the cache by digest so raw tokens are not kept in memory
+    private static String hash(String token) {
         try {
-            Claims claims = Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody();
-            return (String) claims.get("role");
-        } catch (JwtException e) {
-            throw new RuntimeException("Invalid JWT token");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE ships SHA-256
+            throw new IllegalStateException(e);
         }
     }
 }
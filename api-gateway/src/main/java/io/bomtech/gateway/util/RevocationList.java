@@ -0,0 +1,154 @@
+package io.bomtech.gateway.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions revoked at auth-service (logout, refresh token reuse, admin sign-out), kept in memory so
+ * {@code AuthenticationFilter} can refuse their access tokens without a call per request.
+ * <p>
+ * Polls {@code GET /internal/revocations} for what changed since the previous poll. Lookups go through a Bloom
+ * filter first, so the common case (not revoked) is a few bit tests; positives are confirmed against the exact
+ * map. Entries are dropped once the session's last access token has expired, and the filter is rebuilt then.
+ * If auth-service can't be reached the last known list stays in force; {@code gateway.revocations.sync.age}
+ * shows how stale it is.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RevocationList {
+
+    private static final String REVOCATIONS_URI = "lb://auth-service/internal/revocations";
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.revocation.poll-interval:5s}")
+    private Duration pollInterval;
+
+    @Value("${app.revocation.overlap:30s}")
+    private Duration overlap;
+
+    @Value("${app.revocation.request-timeout:5s}")
+    private Duration requestTimeout;
+
+    @Value("${app.revocation.expected-size:10000}")
+    private int expectedSize;
+
+    @Value("${app.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // Session id -> expiry of its last access token. Written by the poll loop only.
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+    private volatile Instant lastSync = Instant.now();
+    private Instant cursor; // Server time to ask from; null until the first successful poll
+    private boolean failing;
+    private Disposable poller;
+
+    @PostConstruct
+    public void init() {
+        filter = new BloomFilter(expectedSize, falsePositiveRate);
+        Gauge.builder("gateway.revocations.size", revoked, Map::size)
+                .description("Revoked sessions whose access tokens may still be presented")
+                .register(meterRegistry);
+        Gauge.builder("gateway.revocations.sync.age", this, list -> Duration.between(list.lastSync, Instant.now()).toSeconds())
+                .description("Time since the revocation list was last fetched from auth-service")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    // Not in @PostConstruct: the load balancer can't resolve instances while the context is still starting
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        WebClient client = webClientBuilder.build();
+        this.poller = Flux.interval(Duration.ZERO, pollInterval)
+                .onBackpressureDrop() // Previous poll still running
+                .concatMap(tick -> poll(client)
+                        .doOnSuccess(ignored -> {
+                            if (failing) {
+                                failing = false;
+                                log.info("Fetching revoked sessions from auth-service works again");
+                            }
+                        })
+                        .onErrorResume(e -> {
+                            // Once per outage, not on every poll
+                            if (!failing) {
+                                failing = true;
+                                log.warn("Fetching revoked sessions from auth-service failed, keeping the last known list: {}", e.getMessage());
+                            }
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+        log.info("Polling revoked sessions every {}", pollInterval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) {
+            poller.dispose();
+        }
+    }
+
+    public boolean isRevoked(String sessionId) {
+        return sessionId != null && filter.mightContain(sessionId) && revoked.containsKey(sessionId);
+    }
+
+    private Mono<Void> poll(WebClient client) {
+        return client.get()
+                .uri(REVOCATIONS_URI + (cursor != null ? "?since={since}" : ""), cursor != null ? cursor.toString() : "")
+                .retrieve()
+                .bodyToMono(RevocationBatch.class)
+                .timeout(requestTimeout)
+                .doOnNext(this::apply)
+                .then();
+    }
+
+    void apply(RevocationBatch batch) {
+        Instant now = Instant.now();
+        boolean expired = revoked.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+        int added = 0;
+        for (RevokedSession session : batch.revocations()) {
+            if (session.expiresAt().isAfter(now) && revoked.put(session.sessionId(), session.expiresAt()) == null) {
+                filter.add(session.sessionId()); // After the map entry, so a filter hit always finds it
+                added++;
+            }
+        }
+        if (expired || revoked.size() > filter.capacity()) {
+            // Start over without the expired sessions, with room for the list to double if it outgrew the default
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedSize, revoked.size() * 2), falsePositiveRate);
+            revoked.keySet().forEach(rebuilt::add);
+            filter = rebuilt;
+        }
+        if (added > 0) {
+            log.info("{} sessions newly revoked ({} in total)", added, revoked.size());
+        }
+        // Revocations are written a little after their revokedAt, and clocks differ; ask again for a margin
+        cursor = batch.now().minus(overlap);
+        lastSync = now;
+    }
+
+    record RevocationBatch(Instant now, List<RevokedSession> revocations) {
+    }
+
+    record RevokedSession(String sessionId, Instant expiresAt) {
+    }
+}
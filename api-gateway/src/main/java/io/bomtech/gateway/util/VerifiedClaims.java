@@ -0,0 +1,19 @@
+package io.bomtech.gateway.util;
+
+import java.time.Instant;
+
+/**
+ * The claims of a token whose signature and expiry have been checked. Immutable, so one instance can be
+ * shared by every request that presents the same token.
+ *
+ * @param username  The subject claim.
+ * @param role      The role claim, may be null for tokens issued without one.
+ * @param expiresAt The exp claim.
+ * @param sessionId The sid claim, the login session the token belongs to; null for tokens issued before sessions.
+ */
+public record VerifiedClaims(String username, String role, Instant expiresAt, String sessionId) {
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
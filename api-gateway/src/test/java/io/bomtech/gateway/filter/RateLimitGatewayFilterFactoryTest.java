@@ -0,0 +1,93 @@
+package io.bomtech.gateway.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GCRA bucket of the RateLimit filter at 1 request per second with a burst of 3.
+ */
+class RateLimitGatewayFilterFactoryTest {
+
+    private static final long INTERVAL = Duration.ofSeconds(1).toNanos();
+    private static final long BURST_TOLERANCE = 2 * INTERVAL;
+    private static final long START = Duration.ofHours(1).toNanos();
+
+    private final AtomicLong bucket = new AtomicLong(Long.MIN_VALUE);
+
+    private long reserve(long now) {
+        return RateLimitGatewayFilterFactory.reserve(bucket, now, INTERVAL, BURST_TOLERANCE);
+    }
+
+    @Test
+    void allowsBurstThenReportsWaitForNextToken() {
+        assertThat(reserve(START)).isZero();
+        assertThat(reserve(START)).isZero();
+        assertThat(reserve(START)).isZero();
+
+        assertThat(reserve(START)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void throttledRequestsDoNotTakeTokens() {
+        for (int i = 0; i < 3; i++) {
+            reserve(START);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(reserve(START)).isPositive();
+        }
+
+        assertThat(reserve(START + INTERVAL)).isZero();
+        assertThat(reserve(START + INTERVAL)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void sustainedRateAtTheLimitIsAlwaysAllowed() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(reserve(START + i * INTERVAL)).isZero();
+        }
+    }
+
+    @Test
+    void idleTimeRefillsUpToBurstOnly() {
+        reserve(START);
+
+        long later = START + Duration.ofMinutes(10).toNanos();
+        assertThat(reserve(later)).isZero();
+        assertThat(reserve(later)).isZero();
+        assertThat(reserve(later)).isZero();
+        assertThat(reserve(later)).isPositive();
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedBurst() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch ready = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            pool.execute(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (reserve(START) == 0) {
+                    allowed.incrementAndGet();
+                }
+            });
+        }
+        ready.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(allowed).hasValue(3);
+    }
+}
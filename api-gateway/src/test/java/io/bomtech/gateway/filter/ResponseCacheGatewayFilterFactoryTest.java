@@ -0,0 +1,177 @@
+package io.bomtech.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ResponseCache filter on {@code /users/me} against a fake downstream that answers every read with the same
+ * JSON body.
+ */
+class ResponseCacheGatewayFilterFactoryTest {
+
+    private static final String BODY = "{\"username\":\"alice\"}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        config.setPaths(List.of("/users/me"));
+        filter = new ResponseCacheGatewayFilterFactory(meterRegistry).apply(config);
+    }
+
+    private static MockServerWebExchange get(String user, String ifNoneMatch) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/users/me").header("X-User-Name", user);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    private static MockServerWebExchange post(String user) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/users/me").header("X-User-Name", user));
+    }
+
+    // Downstream that answers once the gate opens
+    private GatewayFilterChain downstream(Mono<Void> gate) {
+        return exchange -> gate.then(Mono.defer(() -> {
+            downstreamCalls.incrementAndGet();
+            if (exchange.getRequest().getMethod().matches("GET")) {
+                exchange.getResponse().setStatusCode(HttpStatus.OK);
+                exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                return exchange.getResponse().writeWith(Mono.just(
+                        exchange.getResponse().bufferFactory().wrap(BODY.getBytes(StandardCharsets.UTF_8))));
+            }
+            exchange.getResponse().setStatusCode(HttpStatus.NO_CONTENT);
+            return exchange.getResponse().setComplete();
+        }));
+    }
+
+    private MockServerHttpResponse send(MockServerWebExchange exchange) {
+        filter.filter(exchange, downstream(Mono.empty())).block();
+        return exchange.getResponse();
+    }
+
+    private double results(String result) {
+        return meterRegistry.get("gateway.response.cache").tag("result", result).counter().count();
+    }
+
+    @Test
+    void secondReadIsServedFromTheCache() {
+        MockServerHttpResponse miss = send(get("alice", null));
+        MockServerHttpResponse hit = send(get("alice", null));
+
+        assertThat(miss.getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(hit.getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+        assertThat(hit.getBodyAsString().block()).isEqualTo(BODY);
+        assertThat(hit.getHeaders().getETag()).isEqualTo(miss.getHeaders().getETag()).isNotNull();
+        assertThat(downstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void entriesAreKeptPerUser() {
+        send(get("alice", null));
+        MockServerHttpResponse other = send(get("bob", null));
+
+        assertThat(other.getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(downstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void matchingETagOnAMissIsAnsweredWith304() {
+        String etag = send(get("alice", null)).getHeaders().getETag();
+        send(post("alice")); // Drops the entry, so the next read is a miss again
+
+        MockServerHttpResponse revalidated = send(get("alice", etag));
+
+        assertThat(revalidated.getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(revalidated.getBodyAsString().block()).isEmpty();
+        assertThat(revalidated.getHeaders().getContentLength()).isEqualTo(-1);
+    }
+
+    @Test
+    void matchingETagOnAHitIsAnsweredWith304() {
+        String etag = send(get("alice", null)).getHeaders().getETag();
+
+        MockServerHttpResponse revalidated = send(get("alice", etag));
+
+        assertThat(revalidated.getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(revalidated.getBodyAsString().block()).isEmpty();
+        assertThat(results("not_modified")).isEqualTo(1);
+        assertThat(downstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void staleETagGetsTheFullBody() {
+        send(get("alice", null));
+
+        MockServerHttpResponse response = send(get("alice", "\"outdated\""));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBodyAsString().block()).isEqualTo(BODY);
+    }
+
+    @Test
+    void writeInvalidatesTheUsersEntries() {
+        send(get("alice", null));
+        send(post("alice"));
+
+        MockServerHttpResponse afterWrite = send(get("alice", null));
+
+        assertThat(afterWrite.getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(downstreamCalls).hasValue(3);
+    }
+
+    @Test
+    void readInFlightDuringAWriteIsNotServedAfterIt() {
+        // The read reaches the downstream before the write and is answered after it
+        Sinks.Empty<Void> gate = Sinks.empty();
+        MockServerWebExchange inFlight = get("alice", null);
+        CompletableFuture<Void> read = filter.filter(inFlight, downstream(gate.asMono())).toFuture();
+        send(post("alice"));
+        gate.tryEmitEmpty();
+        read.join();
+        assertThat(inFlight.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+
+        MockServerHttpResponse next = send(get("alice", null));
+
+        assertThat(next.getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(downstreamCalls).hasValue(3);
+    }
+
+    @Test
+    void streamingReadsBypassTheCache() {
+        send(get("alice", null));
+
+        MockServerWebExchange streaming = MockServerWebExchange.from(MockServerHttpRequest.get("/users/me")
+                .header("X-User-Name", "alice")
+                .accept(MediaType.APPLICATION_NDJSON));
+        send(streaming);
+
+        assertThat(streaming.getResponse().getHeaders().getFirst("X-Cache")).isNull();
+        assertThat(results("bypass")).isEqualTo(1);
+        assertThat(downstreamCalls).hasValue(2);
+    }
+}
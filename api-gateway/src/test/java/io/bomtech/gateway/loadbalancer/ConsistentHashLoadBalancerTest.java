@@ -0,0 +1,124 @@
+package io.bomtech.gateway.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hash ring and request keys of the device-management-service load balancer, with the production default of 160
+ * points per instance.
+ */
+class ConsistentHashLoadBalancerTest {
+
+    private static final int VIRTUAL_NODES = 160;
+    private static final List<String> KEYS = IntStream.range(0, 20_000)
+            .mapToObj(i -> String.format("device:loadgen-%06d", i))
+            .toList();
+
+    private static ServiceInstance instance(int n) {
+        return new DefaultServiceInstance("device-" + n, "device-management-service", "10.0.0." + n, 8080, false);
+    }
+
+    private static List<ServiceInstance> instances(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(ConsistentHashLoadBalancerTest::instance).toList();
+    }
+
+    private static Map<String, String> assign(List<ServiceInstance> instances) {
+        ConsistentHashLoadBalancer.Ring ring = ConsistentHashLoadBalancer.Ring.build(instances, VIRTUAL_NODES);
+        Map<String, String> owners = new HashMap<>();
+        for (String key : KEYS) {
+            owners.put(key, ring.lookup(ConsistentHashLoadBalancer.hash(key)).getInstanceId());
+        }
+        return owners;
+    }
+
+    @Test
+    void assignmentDoesNotDependOnInstanceOrder() {
+        List<ServiceInstance> shuffled = new ArrayList<>(instances(4));
+        Collections.reverse(shuffled);
+
+        assertThat(assign(shuffled)).isEqualTo(assign(instances(4)));
+    }
+
+    @Test
+    void keysAreSpreadEvenly() {
+        Map<String, Integer> counts = new HashMap<>();
+        assign(instances(4)).values().forEach(owner -> counts.merge(owner, 1, Integer::sum));
+
+        assertThat(counts).hasSize(4);
+        int mean = KEYS.size() / 4;
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(mean * 7 / 10, mean * 13 / 10));
+    }
+
+    @Test
+    void addingAnInstanceMovesOnlyItsShareToIt() {
+        Map<String, String> before = assign(instances(4));
+        Map<String, String> after = assign(instances(5));
+
+        long moved = KEYS.stream().filter(key -> !before.get(key).equals(after.get(key))).count();
+        assertThat(KEYS).filteredOn(key -> !before.get(key).equals(after.get(key)))
+                .allSatisfy(key -> assertThat(after.get(key)).isEqualTo("device-5"));
+        // About 1/5 of the keys, instead of ~4/5 with modulo hashing
+        assertThat(moved).isBetween(KEYS.size() / 10L, KEYS.size() * 3 / 10L);
+    }
+
+    @Test
+    void removingAnInstanceMovesOnlyItsKeys() {
+        Map<String, String> before = assign(instances(5));
+        Map<String, String> after = assign(instances(4));
+
+        assertThat(KEYS).filteredOn(key -> !before.get(key).equals(after.get(key)))
+                .allSatisfy(key -> assertThat(before.get(key)).isEqualTo("device-5"));
+    }
+
+    @Test
+    void lookupWrapsAroundPastTheLastPoint() {
+        ConsistentHashLoadBalancer.Ring ring = ConsistentHashLoadBalancer.Ring.build(instances(3), VIRTUAL_NODES);
+
+        assertThat(ring.lookup(Long.MAX_VALUE)).isSameAs(ring.owners()[0]);
+        assertThat(ring.lookup(Long.MIN_VALUE)).isSameAs(ring.owners()[0]);
+    }
+
+    private static String hashKey(HttpMethod method, String url, String user, boolean upgrade) {
+        HttpHeaders headers = new HttpHeaders();
+        if (user != null) {
+            headers.set("X-User-Name", user);
+        }
+        if (upgrade) {
+            headers.setUpgrade("websocket");
+        }
+        RequestData data = new RequestData(method, URI.create(url), headers, new LinkedMultiValueMap<>(), new HashMap<>());
+        return ConsistentHashLoadBalancer.hashKey(new DefaultRequest<>(new RequestDataContext(data)));
+    }
+
+    @Test
+    void phoneBrowserAndCommandCallsOfOneUserShareAKey() {
+        String phone = hashKey(HttpMethod.GET, "ws://device/ws/device?deviceId=dev-1", "alice", true);
+        String browser = hashKey(HttpMethod.GET, "ws://device/ws/web/updates", "alice", true);
+        String backup = hashKey(HttpMethod.POST, "http://device/api/devices/dev-1/backup", "alice", false);
+
+        assertThat(phone).isEqualTo("user:alice").isEqualTo(browser).isEqualTo(backup);
+    }
+
+    @Test
+    void handshakeWithoutUserFallsBackToDeviceId() {
+        assertThat(hashKey(HttpMethod.GET, "ws://device/ws/device?deviceId=dev-1", null, true)).isEqualTo("device:dev-1");
+        assertThat(hashKey(HttpMethod.GET, "http://device/api/devices/dev-1?deviceId=dev-1", null, false)).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+package io.bomtech.gateway.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-test-secret-test-secret-42";
+
+    private final JwtUtil jwtUtil = new JwtUtil(SECRET, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+    // Shaped like auth-service's tokens; tokenUse null leaves the claim out
+    private static String token(String tokenUse, long ttlMillis) {
+        var builder = Jwts.builder()
+                .setSubject("alice")
+                .claim("role", "USER")
+                .claim("sid", "session-1")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMillis));
+        if (tokenUse != null) {
+            builder.claim("token_use", tokenUse);
+        }
+        return builder.signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256).compact();
+    }
+
+    @Test
+    void acceptsAccessTokens() {
+        VerifiedClaims claims = jwtUtil.verify(token("access", 60_000)).orElseThrow();
+
+        assertThat(claims.username()).isEqualTo("alice");
+        assertThat(claims.role()).isEqualTo("USER");
+        assertThat(claims.sessionId()).isEqualTo("session-1");
+    }
+
+    @Test
+    void rejectsRefreshTokensAsBearerTokens() {
+        assertThat(jwtUtil.verify(token("refresh", 60_000))).isEmpty();
+    }
+
+    @Test
+    void rejectsTokensWithoutTokenUse() {
+        assertThat(jwtUtil.verify(token(null, 60_000))).isEmpty();
+    }
+
+    @Test
+    void rejectsExpiredAndForgedTokens() {
+        assertThat(jwtUtil.verify(token("access", -1_000))).isEmpty();
+        String forged = Jwts.builder()
+                .setSubject("alice")
+                .claim("token_use", "access")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor("another-secret-another-secret-another".getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+        assertThat(jwtUtil.verify(forged)).isEmpty();
+    }
+
+    @Test
+    void cachedVerificationStillRejectsRefreshTokens() {
+        String refresh = token("refresh", 60_000);
+        jwtUtil.verify(refresh);
+
+        assertThat(jwtUtil.verify(refresh)).isEmpty();
+    }
+}
@@ -0,0 +1,88 @@
+package io.bomtech.gateway.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Applying polled batches to the revocation list, with an expected size of 100.
+ */
+class RevocationListTest {
+
+    private RevocationList list;
+
+    @BeforeEach
+    void setUp() {
+        list = new RevocationList(WebClient.builder(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(list, "overlap", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(list, "expectedSize", 100);
+        ReflectionTestUtils.setField(list, "falsePositiveRate", 0.01);
+        list.init();
+    }
+
+    private static RevocationList.RevocationBatch batch(int from, int to, Instant expiresAt) {
+        return new RevocationList.RevocationBatch(Instant.now(), IntStream.range(from, to)
+                .mapToObj(i -> new RevocationList.RevokedSession("sid-" + i, expiresAt))
+                .toList());
+    }
+
+    private BloomFilter filter() {
+        return (BloomFilter) ReflectionTestUtils.getField(list, "filter");
+    }
+
+    @Test
+    void revokedSessionsAreFound() {
+        list.apply(batch(0, 10, Instant.now().plusSeconds(600)));
+
+        assertThat(list.isRevoked("sid-3")).isTrue();
+        assertThat(list.isRevoked("sid-10")).isFalse();
+        assertThat(list.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void alreadyExpiredSessionsAreIgnored() {
+        list.apply(batch(0, 1, Instant.now().minusSeconds(1)));
+
+        assertThat(list.isRevoked("sid-0")).isFalse();
+    }
+
+    @Test
+    void filterOutgrownOnceIsNotRebuiltOnEveryPoll() {
+        Instant expiresAt = Instant.now().plusSeconds(600);
+        list.apply(batch(0, 150, expiresAt));
+        BloomFilter grown = filter();
+        assertThat(grown.capacity()).isEqualTo(300);
+
+        list.apply(batch(150, 200, expiresAt));
+        list.apply(new RevocationList.RevocationBatch(Instant.now(), List.of()));
+        assertThat(filter()).isSameAs(grown);
+        assertThat(IntStream.range(0, 200)).allMatch(i -> list.isRevoked("sid-" + i));
+
+        list.apply(batch(200, 301, expiresAt));
+        assertThat(filter().capacity()).isEqualTo(602);
+        assertThat(IntStream.range(0, 301)).allMatch(i -> list.isRevoked("sid-" + i));
+    }
+
+    @Test
+    void expiredEntriesAreDroppedAndTheFilterRebuilt() throws InterruptedException {
+        list.apply(batch(0, 5, Instant.now().plusMillis(50)));
+        list.apply(batch(5, 10, Instant.now().plusSeconds(600)));
+        BloomFilter before = filter();
+
+        Thread.sleep(100);
+        list.apply(new RevocationList.RevocationBatch(Instant.now(), List.of()));
+
+        assertThat(filter()).isNotSameAs(before);
+        assertThat(list.isRevoked("sid-0")).isFalse();
+        assertThat(list.isRevoked("sid-7")).isTrue();
+    }
+}
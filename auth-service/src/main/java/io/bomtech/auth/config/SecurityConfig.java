@@ -2,27 +2,25 @@ package io.bomtech.auth.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
 
 @Configuration
+@EnableWebFluxSecurity
 public class SecurityConfig {
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // Use BCrypt for strong hashing
-    }
-
-    @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
         http
             .csrf(csrf -> csrf.disable())
-            .authorizeHttpRequests(authz -> authz
-                .requestMatchers("/auth/register", "/auth/login", "/auth/refresh").permitAll()
-                .anyRequest().authenticated()
+            .authorizeExchange(exchange -> exchange
+                .pathMatchers("/auth/register", "/auth/login", "/auth/refresh", "/auth/logout").permitAll()
+                .pathMatchers("/auth/users/*/revoke-sessions").permitAll() // Role checked from X-User-Role, set by the gateway
+                .pathMatchers("/internal/**").permitAll() // Not routed by the gateway; polled by it inside the network
+                .pathMatchers("/actuator/**").permitAll() // Not routed by the gateway; scraped inside the network
+                .anyExchange().authenticated()
             );
         return http.build();
     }
-}
\ No newline at end of file
+}
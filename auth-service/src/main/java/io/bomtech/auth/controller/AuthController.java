@@ -3,75 +3,95 @@ package io.bomtech.auth.controller;
 import io.bomtech.auth.dto.RegisterRequest;
 import io.bomtech.auth.model.User;
 import io.bomtech.auth.service.AuthService;
-import io.bomtech.auth.util.JwtUtil;
+import io.bomtech.auth.service.PasswordHasher;
+import io.bomtech.auth.service.TokenService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/auth")
+@Slf4j
 public class AuthController {
 
     @Autowired
     private AuthService authService;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenService tokenService;
 
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest registerRequest) {
-        try {
-            authService.register(registerRequest);
-            return ResponseEntity.ok(Map.of("message", "User registered successfully"));
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
-        } catch (Exception e) {
-            System.err.println("Registration error: " + e.getMessage()); // Log lỗi
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "An internal server error occurred"));
-        }
+    public Mono<ResponseEntity<Map<String, String>>> register(@RequestBody RegisterRequest registerRequest) {
+        return authService.register(registerRequest)
+                .map(savedUser -> ResponseEntity.ok(Map.of("message", "User registered successfully")))
+                .onErrorResume(IllegalArgumentException.class, e ->
+                        Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()))))
+                .onErrorResume(PasswordHasher.BusyException.class, e -> Mono.just(busy()))
+                .onErrorResume(e -> {
+                    log.error("Registration error: {}", e.getMessage()); // Log lỗi
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of("error", "An internal server error occurred")));
+                });
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody User user) {
-        Optional<User> foundUserOpt = authService.findUserByUsername(user.getUsername());
+    public Mono<ResponseEntity<Map<String, String>>> login(@RequestBody User user) {
+        // Password check runs on PasswordHasher's bcrypt pool
+        return authService.login(user.getUsername(), user.getPassword())
+                .flatMap(credentials -> tokenService.issue(credentials.username(), credentials.role()))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid username or password")))
+                .onErrorResume(PasswordHasher.BusyException.class, e -> Mono.just(busy()));
+    }
 
-        if (foundUserOpt.isPresent()) {
-            User foundUser = foundUserOpt.get();
-            // Kiểm tra mật khẩu (NÊN DÙNG PasswordEncoder)
-            // if (passwordEncoder.matches(user.getPassword(), foundUser.getPassword())) {
-            if (user.getPassword().equals(foundUser.getPassword())) { // Tạm thời so sánh trực tiếp
-                String accessToken = jwtUtil.generateAccessToken(foundUser.getUsername(), foundUser.getRole());
-                String refreshToken = jwtUtil.generateRefreshToken(foundUser.getUsername(), foundUser.getRole());
-                Map<String, String> tokens = new HashMap<>();
-                tokens.put("accessToken", accessToken);
-                tokens.put("refreshToken", refreshToken);
-                return ResponseEntity.ok(tokens);
-            }
-        }
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid username or password"));
+    // Hashing pool saturated: fail fast and let the client retry shortly
+    private static ResponseEntity<Map<String, String>> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "Too many login attempts in progress, please retry"));
     }
 
+    // Rotation: the refresh token is used up and replaced by the one in the response
     @PostMapping("/refresh")
-    public ResponseEntity<?> refresh(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> refresh(@RequestBody Map<String, String> request) {
+        String refreshToken = request.get("refreshToken");
+        if (refreshToken == null) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "Refresh token is missing")));
+        }
+        return tokenService.rotate(refreshToken)
+                .map(ResponseEntity::ok)
+                .onErrorResume(TokenService.InvalidTokenException.class, e ->
+                        Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", e.getMessage()))));
+    }
+
+    // Ends the session: its refresh tokens stop working and the gateway refuses its access tokens
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<Map<String, String>>> logout(@RequestBody Map<String, String> request) {
         String refreshToken = request.get("refreshToken");
         if (refreshToken == null) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Refresh token is missing"));
+            return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "Refresh token is missing")));
         }
-        try {
-            String username = jwtUtil.validateToken(refreshToken);
-            String role = jwtUtil.getRoleFromToken(refreshToken);
-            String newAccessToken = jwtUtil.generateAccessToken(username, role);
-            Map<String, String> tokens = new HashMap<>();
-            tokens.put("accessToken", newAccessToken);
-            return ResponseEntity.ok(tokens);
-        } catch (Exception e) {
-            System.err.println("Token refresh error: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Invalid or expired refresh token"));
+        return tokenService.logout(refreshToken)
+                .thenReturn(ResponseEntity.ok(Map.of("message", "Logged out")));
+    }
+
+    // Signs a user out everywhere, e.g. after a password leak
+    @PostMapping("/users/{username}/revoke-sessions")
+    public Mono<ResponseEntity<Map<String, String>>> revokeSessions(@PathVariable String username,
+                                                                    @RequestHeader(value = "X-User-Role", required = false) String role) {
+        if (!"ADMIN".equalsIgnoreCase(role)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Access denied")));
         }
+        return tokenService.revokeUser(username)
+                .map(count -> {
+                    log.info("Revoked {} sessions of user {}", count, username);
+                    return ResponseEntity.ok(Map.of("revokedSessions", String.valueOf(count)));
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package io.bomtech.auth.controller;
+
+import io.bomtech.auth.dto.RevocationBatch;
+import io.bomtech.auth.service.TokenService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+// Polled by the gateway; not routed publicly (the gateway only forwards /auth/**)
+@RestController
+@RequestMapping("/internal/revocations")
+@RequiredArgsConstructor
+public class RevocationController {
+
+    private final TokenService tokenService;
+
+    @GetMapping
+    public Mono<RevocationBatch> revocations(
+            @RequestParam(required = false) Instant since) { // ISO-8601, e.g. 2024-05-01T10:00:00Z
+        Instant now = Instant.now(); // Taken before the query, so nothing revoked during it is skipped next time
+        return tokenService.revocationsSince(since != null ? since : Instant.EPOCH)
+                .map(r -> new RevocationBatch.RevokedSession(r.getSessionId(), r.getExpiresAt()))
+                .collectList()
+                .map(revocations -> new RevocationBatch(now, revocations));
+    }
+}
@@ -0,0 +1,15 @@
+package io.bomtech.auth.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Answer of {@code GET /internal/revocations}: sessions revoked since the requested time, and the server time
+ * the gateway should ask from next.
+ */
+public record RevocationBatch(Instant now, List<RevokedSession> revocations) {
+
+    // expiresAt: when the last access token of the session expires
+    public record RevokedSession(String sessionId, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,14 @@
+package io.bomtech.auth.dto;
+
+import io.bomtech.auth.model.UserOutbox;
+
+/**
+ * One entry of a {@code POST /users/bulk} request to user-service.
+ */
+public record UserSyncRecord(String idempotencyKey, String id, String username, String email, String fullname, String role) {
+
+    public static UserSyncRecord from(UserOutbox record) {
+        return new UserSyncRecord(record.getId(), record.getUserId(), record.getUsername(), record.getEmail(),
+                record.getFullname(), record.getRole());
+    }
+}
@@ -0,0 +1,31 @@
+package io.bomtech.auth.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * An issued refresh token, by its jti. Each refresh replaces the token with a new one of the same session
+ * (family); presenting a token that was already used revokes the whole session. Documents are removed by the
+ * TTL index once the token expires.
+ */
+@Data
+@Document(collection = "refresh_tokens")
+public class RefreshToken {
+    @Id
+    private String id; // jti claim
+    @Indexed
+    private String sessionId; // sid claim, shared by every refresh and access token of one login
+    @Indexed
+    private String username;
+    private String role;
+    private Instant issuedAt;
+    @Indexed(expireAfterSeconds = 0)
+    private Instant expiresAt;
+    private Instant usedAt; // Set when exchanged for a new pair; a second use means the token leaked
+    private String successorId; // jti of the token issued in exchange; re-sent to a concurrent refresh within the reuse grace
+    private boolean revoked;
+}
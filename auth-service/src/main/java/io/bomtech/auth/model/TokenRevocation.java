@@ -0,0 +1,23 @@
+package io.bomtech.auth.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A revoked session, published to the gateway through {@code GET /internal/revocations}. Kept only until the
+ * last access token of the session has expired; after that the gateway no longer needs to know about it.
+ */
+@Data
+@Document(collection = "token_revocations")
+public class TokenRevocation {
+    @Id
+    private String sessionId;
+    @Indexed
+    private Instant revokedAt;
+    @Indexed(expireAfterSeconds = 0)
+    private Instant expiresAt;
+}
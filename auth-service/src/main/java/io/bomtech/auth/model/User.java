@@ -1,14 +1,21 @@
 package io.bomtech.auth.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "users")
 public class User {
+    // Named so a duplicate-key error can be told apart by index
+    public static final String USERNAME_INDEX = "username_unique";
+    public static final String EMAIL_INDEX = "email_unique";
+
     @Id
     private String id;
+    @Indexed(unique = true, name = USERNAME_INDEX)
     private String username;
     private String password;
+    @Indexed(unique = true, sparse = true, name = EMAIL_INDEX) // Sparse: older accounts have no email
     private String email;
     private String role;
 
@@ -0,0 +1,43 @@
+package io.bomtech.auth.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A user profile waiting to be delivered to user-service by UserSyncRelay. The id doubles as the idempotency
+ * key sent with the record, so redeliveries of the same event are recognised downstream.
+ */
+@Data
+@Document(collection = "user_outbox")
+public class UserOutbox {
+    @Id
+    private String id;
+    private String userId;
+    private String username;
+    private String email;
+    private String fullname;
+    private String role;
+    @Indexed
+    private Instant createdAt;
+    @Indexed
+    private Instant nextAttemptAt; // Not picked up by the relay before this time
+    private int attempts;
+    private String lastError;
+
+    public static UserOutbox userCreated(User user, String fullname) {
+        UserOutbox record = new UserOutbox();
+        record.setId("user-created:" + user.getId());
+        record.setUserId(user.getId());
+        record.setUsername(user.getUsername());
+        record.setEmail(user.getEmail());
+        record.setFullname(fullname);
+        record.setRole(user.getRole());
+        record.setCreatedAt(Instant.now());
+        record.setNextAttemptAt(record.getCreatedAt());
+        return record;
+    }
+}
@@ -0,0 +1,11 @@
+package io.bomtech.auth.repository;
+
+import io.bomtech.auth.model.RefreshToken;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface RefreshTokenRepository extends ReactiveMongoRepository<RefreshToken, String> {
+
+    // Live tokens of a user, to revoke all of their sessions
+    Flux<RefreshToken> findByUsernameAndRevokedFalse(String username);
+}
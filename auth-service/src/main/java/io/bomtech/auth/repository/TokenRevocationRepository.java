@@ -0,0 +1,13 @@
+package io.bomtech.auth.repository;
+
+import io.bomtech.auth.model.TokenRevocation;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+public interface TokenRevocationRepository extends ReactiveMongoRepository<TokenRevocation, String> {
+
+    // Revocations since the gateway's last poll
+    Flux<TokenRevocation> findByRevokedAtGreaterThanEqual(Instant since);
+}
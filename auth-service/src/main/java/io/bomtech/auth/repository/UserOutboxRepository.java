@@ -0,0 +1,18 @@
+package io.bomtech.auth.repository;
+
+import io.bomtech.auth.model.UserOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public interface UserOutboxRepository extends ReactiveMongoRepository<UserOutbox, String> {
+
+    // Records due for (re)delivery, oldest first
+    Flux<UserOutbox> findByNextAttemptAtLessThanEqualOrderByCreatedAtAsc(Instant now, Pageable pageable);
+
+    // Oldest pending record, for the relay lag
+    Mono<UserOutbox> findFirstByOrderByCreatedAtAsc();
+}
@@ -1,10 +1,10 @@
 package io.bomtech.auth.repository;
 
 import io.bomtech.auth.model.User;
-import org.springframework.data.mongodb.repository.MongoRepository;
-import java.util.Optional;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
 
-public interface UserRepository extends MongoRepository<User, String> {
-    Optional<User> findByUsername(String username);
-    Optional<User> findByEmail(String email); // Add method to find by email
-}
\ No newline at end of file
+public interface UserRepository extends ReactiveMongoRepository<User, String> {
+    Mono<User> findByUsername(String username);
+    Mono<User> findByEmail(String email); // Add method to find by email
+}
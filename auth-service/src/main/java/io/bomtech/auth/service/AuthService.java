@@ -2,74 +2,120 @@ package io.bomtech.auth.service;
 
 import io.bomtech.auth.dto.RegisterRequest; // Import the DTO
 import io.bomtech.auth.model.User;
+import io.bomtech.auth.model.UserOutbox;
+import io.bomtech.auth.repository.UserOutboxRepository;
 import io.bomtech.auth.repository.UserRepository;
-import io.bomtech.auth.util.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
-import java.util.Map; // Import Map
-import java.util.HashMap; // Import HashMap
-import java.util.Optional;
-
 @Service
+@Slf4j
 public class AuthService {
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private ReactiveMongoTemplate mongoTemplate;
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private UserOutboxRepository outboxRepository;
 
-    // Modify register method to accept RegisterRequest
-    public void register(RegisterRequest registerRequest) {
-        // Check if username already exists
-        if (userRepository.findByUsername(registerRequest.getUsername()).isPresent()) {
-            throw new IllegalArgumentException("Username already exists");
-        }
-        // Check if email already exists (optional, but recommended)
-        if (userRepository.findByEmail(registerRequest.getEmail()).isPresent()) {
-            throw new IllegalArgumentException("Email already exists");
-        }
+    @Autowired
+    private UserSyncRelay userSyncRelay;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
 
-        User newUser = new User();
-        newUser.setUsername(registerRequest.getUsername());
-        // IMPORTANT: Encode the password in a real application!
-        // newUser.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
-        newUser.setPassword(registerRequest.getPassword()); // Temporary direct set
-        newUser.setEmail(registerRequest.getEmail());
+    @Autowired
+    private CredentialCache credentialCache;
 
-        newUser.setRole("USER");
+    // Signals IllegalArgumentException if the username or email is taken, PasswordHasher.BusyException under overload
+    public Mono<User> register(RegisterRequest registerRequest) {
+        // Accounts in the login cache are refused without hashing; everything else is left to the unique indexes
+        if (credentialCache.contains(registerRequest.getUsername())) {
+            return Mono.error(new IllegalArgumentException("Username already exists"));
+        }
+        return passwordHasher.hash(registerRequest.getPassword())
+            .flatMap(passwordHash -> {
+                User newUser = new User();
+                newUser.setId(new ObjectId().toHexString()); // Known up front so the outbox record can refer to it
+                newUser.setUsername(registerRequest.getUsername());
+                newUser.setPassword(passwordHash);
+                newUser.setEmail(registerRequest.getEmail());
 
-        User savedUser = userRepository.save(newUser);
+                newUser.setRole("USER");
 
-        Map<String, String> userServiceData = new HashMap<>();
-        userServiceData.put("id", savedUser.getId());
-        userServiceData.put("username", savedUser.getUsername());
-        userServiceData.put("email", savedUser.getEmail());
-        userServiceData.put("fullname", registerRequest.getFullname());
-        userServiceData.put("role", savedUser.getRole());
+                // The user-service profile is created by UserSyncRelay. Mongo runs without a replica set here,
+                // so instead of a transaction: outbox record first, then the user, and the record is removed
+                // again if the user can't be saved (the relay drops records whose user never appeared).
+                UserOutbox outboxRecord = UserOutbox.userCreated(newUser, registerRequest.getFullname());
+                return outboxRepository.save(outboxRecord)
+                        .then(userRepository.insert(newUser))
+                        .onErrorResume(e -> outboxRepository.deleteById(outboxRecord.getId())
+                                .onErrorResume(cleanupError -> {
+                                    log.warn("Could not remove outbox record {}: {}", outboxRecord.getId(), cleanupError.getMessage());
+                                    return Mono.empty();
+                                })
+                                .then(Mono.error(e)));
+            })
+            // Insert only, no prior lookups: the unique indexes decide, also between concurrent registrations
+            .onErrorMap(DuplicateKeyException.class, e -> new IllegalArgumentException(
+                    e.getMessage() != null && e.getMessage().contains(User.EMAIL_INDEX)
+                            ? "Email already exists"
+                            : "Username already exists"))
+            .doOnNext(savedUser -> {
+                credentialCache.put(CredentialCache.Credentials.of(savedUser));
+                userSyncRelay.wakeUp();
+            });
+    }
 
-        webClientBuilder.build()
-                .post()
-                .uri("lb://user-service/users")
-                .body(Mono.just(userServiceData), Map.class)
-                .retrieve()
-                .bodyToMono(Void.class)
-                .doOnError(error -> System.err.println("Failed to send user to user-service: " + error.getMessage()))
-                .subscribe();
+    // Empty if the username is unknown or the password doesn't match; PasswordHasher.BusyException under overload
+    public Mono<CredentialCache.Credentials> login(String username, String password) {
+        return credentialCache.findByUsername(username)
+                .filterWhen(c -> passwordHasher.matches(password, c.passwordHash()))
+                .flatMap(c -> rehashIfNeeded(c, password).thenReturn(c));
     }
 
-    public boolean login(User user) {
-        return userRepository.findByUsername(user.getUsername())
-        .filter(u -> u.getPassword().equals(user.getPassword()))
-        .isPresent();
+    // Plaintext passwords from before hashing, and hashes below the current cost, are replaced on login
+    private Mono<Void> rehashIfNeeded(CredentialCache.Credentials credentials, String password) {
+        if (!passwordHasher.needsRehash(credentials.passwordHash())) {
+            return Mono.empty();
+        }
+        return passwordHasher.hash(password)
+                .flatMap(passwordHash -> {
+                    // Only the password field, and only if nobody changed it since it was read
+                    Query query = Query.query(Criteria.where("_id").is(credentials.id())
+                            .and("password").is(credentials.passwordHash()));
+                    return mongoTemplate.updateFirst(query, Update.update("password", passwordHash), User.class)
+                            // The cache changes only after the write succeeded
+                            .doOnNext(result -> {
+                                if (result.getModifiedCount() > 0) {
+                                    credentialCache.put(credentials.withPasswordHash(passwordHash));
+                                    log.info("Rehashed stored password of user {}", credentials.username());
+                                } else {
+                                    // Changed or removed meanwhile: the next login reads it again
+                                    credentialCache.invalidate(credentials.username());
+                                }
+                            });
+                })
+                .then()
+                .onErrorResume(e -> {
+                    // The login itself succeeded; try again on the next one, with the stored password
+                    credentialCache.invalidate(credentials.username());
+                    log.warn("Could not rehash password of user {}: {}", credentials.username(), e.getMessage());
+                    return Mono.empty();
+                });
     }
 
-    public Optional<User> findUserByUsername(String username) {
+    public Mono<User> findUserByUsername(String username) {
         return userRepository.findByUsername(username);
     }
-}
\ No newline at end of file
+}
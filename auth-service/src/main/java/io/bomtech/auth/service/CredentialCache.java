@@ -0,0 +1,84 @@
+package io.bomtech.auth.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.bomtech.auth.model.User;
+import io.bomtech.auth.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Credentials by username for login, so repeated logins of the same account skip the database.
+ * <p>
+ * Entries are immutable {@link Credentials} snapshots rather than {@link User} documents, so a login can't
+ * change what concurrent logins of the same account see.
+ * <p>
+ * Concurrent misses for one username share a single query. Unknown usernames are not cached, so random names
+ * can't fill the cache. Entries are replaced when this instance changes the user (registration, rehash) and
+ * expire after {@code app.credential-cache.ttl}, which bounds how long a change made elsewhere (another
+ * instance, the database directly) goes unnoticed.
+ */
+@Service
+@RequiredArgsConstructor
+public class CredentialCache {
+
+    private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.credential-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.credential-cache.ttl:5m}")
+    private Duration ttl;
+
+    private AsyncCache<String, Credentials> users;
+
+    // What a login needs from the user document
+    public record Credentials(String id, String username, String role, String passwordHash) {
+
+        public static Credentials of(User user) {
+            return new Credentials(user.getId(), user.getUsername(), user.getRole(), user.getPassword());
+        }
+
+        public Credentials withPasswordHash(String passwordHash) {
+            return new Credentials(id, username, role, passwordHash);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "auth.credentials");
+    }
+
+    // Empty if no such user; a failed or empty lookup is not cached
+    public Mono<Credentials> findByUsername(String username) {
+        // suppressCancel: the future is shared with concurrent logins of the same user
+        return Mono.fromFuture(users.get(username, (key, executor) ->
+                userRepository.findByUsername(key).map(Credentials::of).toFuture()), true);
+    }
+
+    // Cache only, no database lookup
+    public boolean contains(String username) {
+        return users.getIfPresent(username) != null;
+    }
+
+    public void put(Credentials credentials) {
+        users.synchronous().put(credentials.username(), credentials);
+    }
+
+    public void invalidate(String username) {
+        users.synchronous().invalidate(username);
+    }
+}
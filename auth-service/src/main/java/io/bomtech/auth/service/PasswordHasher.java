@@ -0,0 +1,165 @@
+package io.bomtech.auth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt hashing and verification on a dedicated, bounded pool, off the Netty event loops.
+ * <p>
+ * The pool has a fixed number of threads and a short queue; when both are full new work is rejected at once
+ * with {@link BusyException} (answered with 503 and Retry-After), so a login flood costs a fast error per extra
+ * request instead of unbounded queueing. The work factor is calibrated at startup: the highest cost between
+ * {@code min-cost} and {@code max-cost} whose verification stays within {@code target-verify-time} on this host.
+ * Stored passwords that are still plaintext or use a lower cost are reported by {@link #needsRehash}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PasswordHasher {
+
+    // $2a$, $2b$ or $2y$, two-digit cost, 53 characters of salt and hash
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.password.threads:0}")
+    private int threads;
+
+    @Value("${app.password.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${app.password.target-verify-time:100ms}")
+    private Duration targetVerifyTime;
+
+    @Value("${app.password.min-cost:10}")
+    private int minCost;
+
+    @Value("${app.password.max-cost:14}")
+    private int maxCost;
+
+    private ThreadPoolExecutor executor;
+    private BCryptPasswordEncoder encoder;
+    private Counter rejected;
+    private Timer hashTimer;
+    private Timer verifyTimer;
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("bcrypt-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // executor.active, executor.queued, executor.completed, ... tagged name=password.hash
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "password.hash");
+        rejected = Counter.builder("password.hash.rejected")
+                .description("Hash and verify requests rejected because the bcrypt pool and its queue were full")
+                .register(meterRegistry);
+        hashTimer = Timer.builder("password.hash.duration").tag("operation", "hash").register(meterRegistry);
+        verifyTimer = Timer.builder("password.hash.duration").tag("operation", "verify").register(meterRegistry);
+
+        int cost = calibrate();
+        encoder = new BCryptPasswordEncoder(cost);
+        Gauge.builder("password.hash.cost", () -> cost)
+                .description("BCrypt work factor chosen at startup")
+                .register(meterRegistry);
+        log.info("Password hashing on {} threads (queue {}), bcrypt cost {}", poolSize, queueCapacity, cost);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public Mono<String> hash(String rawPassword) {
+        return submit(() -> hashTimer.record(() -> encoder.encode(rawPassword)));
+    }
+
+    /**
+     * Checks a password against the stored value, which may still be plaintext from before hashing was introduced.
+     */
+    public Mono<Boolean> matches(String rawPassword, String storedPassword) {
+        if (rawPassword == null || storedPassword == null) {
+            return Mono.just(false);
+        }
+        if (!isBcrypt(storedPassword)) {
+            // Constant-time comparison; cheap enough to stay on the calling thread
+            return Mono.just(MessageDigest.isEqual(rawPassword.getBytes(StandardCharsets.UTF_8),
+                    storedPassword.getBytes(StandardCharsets.UTF_8)));
+        }
+        return submit(() -> verifyTimer.record(() -> encoder.matches(rawPassword, storedPassword)));
+    }
+
+    // Plaintext, or bcrypt with a lower cost than the calibrated one
+    public boolean needsRehash(String storedPassword) {
+        return storedPassword == null || !isBcrypt(storedPassword) || encoder.upgradeEncoding(storedPassword);
+    }
+
+    private static boolean isBcrypt(String storedPassword) {
+        return BCRYPT_PATTERN.matcher(storedPassword).matches();
+    }
+
+    private <T> Mono<T> submit(Supplier<T> task) {
+        return Mono.defer(() -> {
+            try {
+                return Mono.fromFuture(CompletableFuture.supplyAsync(task, executor));
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                return Mono.error(new BusyException());
+            }
+        });
+    }
+
+    // Highest cost whose verification stays within the target; each step doubles the time
+    private int calibrate() {
+        int cost = minCost;
+        while (cost < maxCost && verifyNanos(cost + 1) <= targetVerifyTime.toNanos()) {
+            cost++;
+        }
+        return cost;
+    }
+
+    private static long verifyNanos(int cost) {
+        BCryptPasswordEncoder candidate = new BCryptPasswordEncoder(cost);
+        String hash = candidate.encode("calibration-password");
+        long best = Long.MAX_VALUE;
+        // Best of a few runs, so JIT warm-up and a busy moment at startup don't skew the choice
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            candidate.matches("calibration-password", hash);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * The bcrypt pool and its queue are full; the caller should answer 503 and let the client retry.
+     */
+    public static class BusyException extends RuntimeException {
+        public BusyException() {
+            super("Password hashing capacity exhausted");
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package io.bomtech.auth.service;
+
+import io.bomtech.auth.model.RefreshToken;
+import io.bomtech.auth.model.TokenRevocation;
+import io.bomtech.auth.repository.RefreshTokenRepository;
+import io.bomtech.auth.repository.TokenRevocationRepository;
+import io.bomtech.auth.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Issues, rotates and revokes refresh tokens.
+ * <p>
+ * A login starts a session (the {@code sid} claim of every token issued for it). Each refresh token can be
+ * exchanged once: {@code /auth/refresh} marks it used and returns a new access and refresh token of the same
+ * session. A used token presented again within {@code app.refresh-token.reuse-grace} (two tabs refreshing at
+ * once) gets the same new refresh token its first exchange produced, so both tabs stay logged in; presented
+ * later it means the token was copied, so the whole session is revoked. Revoked sessions are published to
+ * the gateway through {@link #revocationsSince}, where access tokens of the session are refused until they
+ * expire.
+ */
+@Service
+@Slf4j
+public class TokenService {
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final TokenRevocationRepository revocationRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final JwtUtil jwtUtil;
+    private final MeterRegistry meterRegistry;
+    private final Outcomes outcomes;
+
+    // The successor is saved just after its predecessor is marked used; a concurrent refresh may look for it first
+    private static final int SUCCESSOR_LOOKUP_ATTEMPTS = 5;
+    private static final Duration SUCCESSOR_LOOKUP_DELAY = Duration.ofMillis(50);
+
+    @Value("${app.refresh-token.reuse-grace:10s}")
+    private Duration reuseGrace;
+
+    public TokenService(RefreshTokenRepository refreshTokenRepository, TokenRevocationRepository revocationRepository,
+                        ReactiveMongoTemplate mongoTemplate, JwtUtil jwtUtil, MeterRegistry meterRegistry) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.revocationRepository = revocationRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.jwtUtil = jwtUtil;
+        this.meterRegistry = meterRegistry;
+        this.outcomes = new Outcomes(counter("rotated"), counter("invalid"), counter("rejected"), counter("reused"),
+                counter("resent"));
+    }
+
+    // New session after a successful login
+    public Mono<Map<String, String>> issue(String username, String role) {
+        return issue(username, role, UUID.randomUUID().toString(), UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for a new access and refresh token.
+     * Signals {@link InvalidTokenException} if the token is forged, expired, unknown, revoked or already used.
+     */
+    public Mono<Map<String, String>> rotate(String refreshToken) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseClaims(refreshToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            outcomes.invalid().increment();
+            return Mono.error(new InvalidTokenException("Invalid or expired refresh token"));
+        }
+        if (JwtUtil.ACCESS_TOKEN_USE.equals(claims.get(JwtUtil.TOKEN_USE_CLAIM, String.class))) {
+            outcomes.invalid().increment();
+            return Mono.error(new InvalidTokenException("Invalid or expired refresh token"));
+        }
+        String tokenId = claims.getId();
+        String sessionId = claims.get(JwtUtil.SESSION_ID_CLAIM, String.class);
+        if (tokenId == null || sessionId == null) {
+            // Issued before tokens were stored; the user has to log in again once
+            outcomes.invalid().increment();
+            return Mono.error(new InvalidTokenException("Refresh token is no longer supported, please log in again"));
+        }
+
+        Instant now = Instant.now();
+        String successorId = UUID.randomUUID().toString();
+        // Atomic: of two concurrent requests with the same token only one gets the document back
+        return mongoTemplate.findAndModify(
+                        query(where("_id").is(tokenId).and("usedAt").is(null).and("revoked").is(false)),
+                        Update.update("usedAt", now).set("successorId", successorId),
+                        FindAndModifyOptions.options().returnNew(true),
+                        RefreshToken.class)
+                .flatMap(stored -> {
+                    outcomes.rotated().increment();
+                    return issue(stored.getUsername(), stored.getRole(), sessionId, successorId);
+                })
+                .switchIfEmpty(Mono.defer(() -> rejectUnusable(tokenId, sessionId, now)));
+    }
+
+    private Mono<Map<String, String>> rejectUnusable(String tokenId, String sessionId, Instant now) {
+        return refreshTokenRepository.findById(tokenId)
+                .flatMap(stored -> {
+                    if (stored.isRevoked() || stored.getUsedAt() == null) {
+                        outcomes.rejected().increment();
+                        return Mono.<Map<String, String>>empty();
+                    }
+                    if (stored.getUsedAt().isAfter(now.minus(reuseGrace))) {
+                        // Another tab exchanged the same token a moment ago: answer with the pair it got
+                        return successorPair(stored);
+                    }
+                    log.warn("Refresh token of user {} used twice; revoking session {}", stored.getUsername(), sessionId);
+                    outcomes.reused().increment();
+                    return revokeSession(sessionId).then(Mono.<Map<String, String>>empty());
+                })
+                .switchIfEmpty(Mono.error(new InvalidTokenException("Invalid or expired refresh token")));
+    }
+
+    // Fresh access token plus the successor refresh token, as long as the successor itself is still unused
+    private Mono<Map<String, String>> successorPair(RefreshToken used) {
+        if (used.getSuccessorId() == null) {
+            outcomes.rejected().increment(); // Used before successors were recorded
+            return Mono.empty();
+        }
+        return refreshTokenRepository.findById(used.getSuccessorId())
+                .repeatWhenEmpty(attempts -> attempts.take(SUCCESSOR_LOOKUP_ATTEMPTS).delayElements(SUCCESSOR_LOOKUP_DELAY))
+                .filter(successor -> !successor.isRevoked() && successor.getUsedAt() == null)
+                .map(successor -> {
+                    outcomes.resent().increment();
+                    return tokenPair(successor);
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> outcomes.rejected().increment()));
+    }
+
+    // Logout: ends the session of the given refresh token. Unreadable tokens are ignored, there is nothing to end.
+    public Mono<Void> logout(String refreshToken) {
+        try {
+            String sessionId = jwtUtil.parseClaims(refreshToken).get(JwtUtil.SESSION_ID_CLAIM, String.class);
+            return sessionId == null ? Mono.empty() : revokeSession(sessionId);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Mono.empty();
+        }
+    }
+
+    // Ends every session of a user that still has a live refresh token; emits the number of sessions
+    public Mono<Long> revokeUser(String username) {
+        return refreshTokenRepository.findByUsernameAndRevokedFalse(username)
+                .map(RefreshToken::getSessionId)
+                .distinct()
+                .concatMap(sessionId -> revokeSession(sessionId).thenReturn(sessionId))
+                .count();
+    }
+
+    public Mono<Void> revokeSession(String sessionId) {
+        Instant now = Instant.now();
+        TokenRevocation revocation = new TokenRevocation();
+        revocation.setSessionId(sessionId);
+        revocation.setRevokedAt(now);
+        // Access tokens issued up to now stay valid at most this long; afterwards the gateway can forget the session
+        revocation.setExpiresAt(now.plus(jwtUtil.getAccessTokenLifetime()));
+        return mongoTemplate.updateMulti(query(where("sessionId").is(sessionId)), Update.update("revoked", true), RefreshToken.class)
+                .then(revocationRepository.save(revocation))
+                .then();
+    }
+
+    // Sessions revoked at or after the given time, including ones revoked again
+    public Flux<TokenRevocation> revocationsSince(Instant since) {
+        return revocationRepository.findByRevokedAtGreaterThanEqual(since);
+    }
+
+    private Mono<Map<String, String>> issue(String username, String role, String sessionId, String tokenId) {
+        Instant now = Instant.now();
+        RefreshToken stored = new RefreshToken();
+        stored.setId(tokenId);
+        stored.setSessionId(sessionId);
+        stored.setUsername(username);
+        stored.setRole(role);
+        stored.setIssuedAt(now);
+        stored.setExpiresAt(now.plus(jwtUtil.getRefreshTokenLifetime()));
+        return refreshTokenRepository.save(stored).map(this::tokenPair);
+    }
+
+    // Signs a new access token and the refresh token of the stored document (the same jti and expiry every time)
+    private Map<String, String> tokenPair(RefreshToken stored) {
+        return Map.of(
+                "accessToken", jwtUtil.generateAccessToken(stored.getUsername(), stored.getRole(), stored.getSessionId()),
+                "refreshToken", jwtUtil.generateRefreshToken(stored.getUsername(), stored.getRole(), stored.getSessionId(),
+                        stored.getId(), Date.from(stored.getExpiresAt())));
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("auth.refresh.tokens")
+                .description("Refresh token exchanges, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // Registered once instead of looked up in the registry per exchange
+    private record Outcomes(Counter rotated, Counter invalid, Counter rejected, Counter reused, Counter resent) {
+    }
+
+    /**
+     * The refresh token can't be exchanged; the client has to log in again.
+     */
+    public static class InvalidTokenException extends RuntimeException {
+        public InvalidTokenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.bomtech.auth.service;
+
+import io.bomtech.auth.dto.UserSyncRecord;
+import io.bomtech.auth.model.User;
+import io.bomtech.auth.model.UserOutbox;
+import io.bomtech.auth.repository.UserOutboxRepository;
+import io.bomtech.auth.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the {@code user_outbox} to user-service's {@code POST /users/bulk} in batches.
+ * <p>
+ * Records are sent with their idempotency key and deleted once user-service reports them applied, already
+ * applied or rejected as invalid; failed records are retried with exponential backoff, so registrations survive
+ * user-service restarts.
+ * Several auth-service instances may deliver the same record, which the idempotency key makes harmless.
+ * A record whose user does not exist (the user insert failed after the record was written) is dropped once it
+ * is older than {@code app.outbox.orphan-grace}. Lag is exposed as {@code user.outbox.pending} and
+ * {@code user.outbox.lag} (age of the oldest pending record, in seconds).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserSyncRelay {
+
+    private static final String BULK_URI = "lb://user-service/users/bulk";
+    private static final Set<String> DONE_RESULTS = Set.of("APPLIED", "DUPLICATE");
+    private static final String REJECTED = "REJECTED"; // Invalid record; retrying won't help
+
+    private final UserOutboxRepository outboxRepository;
+    private final UserRepository userRepository;
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.outbox.poll-interval:1s}")
+    private Duration pollInterval;
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.request-timeout:10s}")
+    private Duration requestTimeout;
+
+    @Value("${app.outbox.max-backoff:5m}")
+    private Duration maxBackoff;
+
+    @Value("${app.outbox.orphan-grace:1m}")
+    private Duration orphanGrace;
+
+    // Registrations wake the relay up instead of waiting for the next poll
+    private final Sinks.Many<Boolean> wakeUps = Sinks.many().multicast().directBestEffort();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private Outcomes outcomes;
+    private Disposable relay;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("user.outbox.pending", pending, AtomicLong::get)
+                .description("User profiles waiting to be delivered to user-service")
+                .register(meterRegistry);
+        Gauge.builder("user.outbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest undelivered user profile")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        outcomes = new Outcomes(counter("delivered"), counter("rejected"), counter("failed"), counter("orphaned"));
+
+        this.relay = Flux.merge(Flux.interval(pollInterval), wakeUps.asFlux())
+                .onBackpressureDrop() // A round is already running; it picks up whatever triggered this
+                .concatMap(tick -> relayDue()
+                        .then(updateLag())
+                        .onErrorResume(e -> {
+                            log.error("User outbox relay round failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+        log.info("User outbox relay started (poll {}, batch {})", pollInterval, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (relay != null) {
+            relay.dispose();
+        }
+    }
+
+    public void wakeUp() {
+        wakeUps.tryEmitNext(Boolean.TRUE);
+    }
+
+    // Delivers batches until no due records are left
+    private Mono<Void> relayDue() {
+        return outboxRepository.findByNextAttemptAtLessThanEqualOrderByCreatedAtAsc(Instant.now(), PageRequest.of(0, batchSize))
+                .collectList()
+                .flatMap(batch -> batch.isEmpty()
+                        ? Mono.empty()
+                        : deliver(batch).then(batch.size() == batchSize ? relayDue() : Mono.empty()));
+    }
+
+    private Mono<Void> deliver(List<UserOutbox> batch) {
+        return userRepository.findAllById(batch.stream().map(UserOutbox::getUserId).toList())
+                .map(User::getId)
+                .collect(Collectors.toSet())
+                .flatMap(existingUserIds -> {
+                    Instant orphanCutoff = Instant.now().minus(orphanGrace);
+                    List<UserOutbox> deliverable = batch.stream().filter(r -> existingUserIds.contains(r.getUserId())).toList();
+                    List<UserOutbox> orphans = batch.stream()
+                            .filter(r -> !existingUserIds.contains(r.getUserId()) && r.getCreatedAt().isBefore(orphanCutoff))
+                            .toList();
+                    // The user insert may still be in flight; look again once the grace period is over
+                    List<UserOutbox> unconfirmed = batch.stream()
+                            .filter(r -> !existingUserIds.contains(r.getUserId()) && !r.getCreatedAt().isBefore(orphanCutoff))
+                            .toList();
+                    unconfirmed.forEach(r -> r.setNextAttemptAt(r.getCreatedAt().plus(orphanGrace)));
+                    if (!orphans.isEmpty()) {
+                        log.warn("Dropping {} outbox records whose users were never stored: {}", orphans.size(),
+                                orphans.stream().map(UserOutbox::getUsername).toList());
+                        outcomes.orphaned().increment(orphans.size());
+                    }
+                    return outboxRepository.deleteAll(orphans)
+                            .then(outboxRepository.saveAll(unconfirmed).then())
+                            .then(deliverable.isEmpty() ? Mono.empty() : send(deliverable));
+                });
+    }
+
+    private Mono<Void> send(List<UserOutbox> records) {
+        return webClientBuilder.build()
+                .post()
+                .uri(BULK_URI)
+                .bodyValue(records.stream().map(UserSyncRecord::from).toList())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, String>>() {})
+                .timeout(requestTimeout)
+                .flatMap(results -> {
+                    // Records missing from the response count as failed
+                    List<UserOutbox> done = records.stream().filter(r -> isDone(results.get(r.getId()))).toList();
+                    List<UserOutbox> rejected = records.stream().filter(r -> REJECTED.equals(results.get(r.getId()))).toList();
+                    List<UserOutbox> failed = records.stream()
+                            .filter(r -> !isDone(results.get(r.getId())) && !REJECTED.equals(results.get(r.getId())))
+                            .toList();
+                    outcomes.delivered().increment(done.size());
+                    if (!rejected.isEmpty()) {
+                        log.error("user-service rejected {} user profiles as invalid; dropping them: {}", rejected.size(),
+                                rejected.stream().map(UserOutbox::getUsername).toList());
+                        outcomes.rejected().increment(rejected.size());
+                    }
+                    return outboxRepository.deleteAll(done)
+                            .then(outboxRepository.deleteAll(rejected))
+                            .then(reschedule(failed, "Not applied by user-service"));
+                })
+                .onErrorResume(e -> {
+                    log.warn("Delivering {} user profiles to user-service failed: {}", records.size(), e.getMessage());
+                    return reschedule(records, e.getMessage());
+                });
+    }
+
+    private static boolean isDone(String result) {
+        return result != null && DONE_RESULTS.contains(result);
+    }
+
+    private Mono<Void> reschedule(List<UserOutbox> records, String error) {
+        if (records.isEmpty()) {
+            return Mono.empty();
+        }
+        outcomes.failed().increment(records.size());
+        Instant now = Instant.now();
+        records.forEach(record -> {
+            record.setAttempts(record.getAttempts() + 1);
+            record.setLastError(error);
+            record.setNextAttemptAt(now.plus(backoff(record.getAttempts())));
+        });
+        return outboxRepository.saveAll(records).then();
+    }
+
+    // 1s, 2s, 4s, ... up to max-backoff
+    private Duration backoff(int attempts) {
+        Duration delay = Duration.ofSeconds(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private Mono<Void> updateLag() {
+        return Mono.zip(outboxRepository.count(),
+                        outboxRepository.findFirstByOrderByCreatedAtAsc()
+                                .map(oldest -> Duration.between(oldest.getCreatedAt(), Instant.now()).toSeconds())
+                                .defaultIfEmpty(0L))
+                .doOnNext(counts -> {
+                    pending.set(counts.getT1());
+                    lagSeconds.set(Math.max(0, counts.getT2()));
+                })
+                .then();
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("user.outbox.records")
+                .description("User outbox records handled by the relay, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // Registered once on startup instead of looked up in the registry per batch
+    private record Outcomes(Counter delivered, Counter rejected, Counter failed, Counter orphaned) {
+    }
+}
@@ -1,15 +1,13 @@
 package io.bomtech.auth.util;
 
-import io.bomtech.auth.model.User; // Add this import
-import io.bomtech.auth.repository.UserRepository; // Add this import
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct; // Import PostConstruct
-import org.springframework.beans.factory.annotation.Autowired; // Add this import
 import org.springframework.beans.factory.annotation.Value; // Import Value
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.time.Duration;
 import java.util.Date;
 
 @Component
@@ -20,12 +18,15 @@ public class JwtUtil {
     @Value("${jwt.secret}") // Inject secret from properties/yml
     private String secretKeyString;
 
-    @Autowired // Add this annotation to inject UserRepository
-    private UserRepository userRepository; // Add this field
-
     private static final long ACCESS_TOKEN_EXPIRATION = 1000 * 60 * 30; // 30 minutes
     private static final long REFRESH_TOKEN_EXPIRATION = 1000 * 60 * 60 * 24; // 24 hours
 
+    public static final String SESSION_ID_CLAIM = "sid";
+    // Both token types share the signing key; the gateway only accepts "access" as a bearer token
+    public static final String TOKEN_USE_CLAIM = "token_use";
+    public static final String ACCESS_TOKEN_USE = "access";
+    public static final String REFRESH_TOKEN_USE = "refresh";
+
     // Change Key initialization to happen after injection
     private Key key;
 
@@ -34,26 +35,50 @@ public class JwtUtil {
         this.key = Keys.hmacShaKeyFor(secretKeyString.getBytes());
     }
 
-    public String generateAccessToken(String username, String role) { // Pass role directly
+    // sid ties the access token to the session of the refresh token it was issued with, for revocation
+    public String generateAccessToken(String username, String role, String sessionId) { // Pass role directly
         return Jwts.builder()
                 .setSubject(username)
                 .claim("role", role) // Use the passed role
+                .claim(SESSION_ID_CLAIM, sessionId)
+                .claim(TOKEN_USE_CLAIM, ACCESS_TOKEN_USE)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + ACCESS_TOKEN_EXPIRATION))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public String generateRefreshToken(String username, String role) { // Pass role directly
+    // jti identifies the stored RefreshToken, which is replaced on every refresh
+    public String generateRefreshToken(String username, String role, String sessionId, String tokenId, Date expiresAt) {
         return Jwts.builder()
                 .setSubject(username)
                 .claim("role", role) // Use the passed role
+                .claim(SESSION_ID_CLAIM, sessionId)
+                .claim(TOKEN_USE_CLAIM, REFRESH_TOKEN_USE)
+                .setId(tokenId)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + REFRESH_TOKEN_EXPIRATION))
+                .setExpiration(expiresAt)
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    public Duration getAccessTokenLifetime() {
+        return Duration.ofMillis(ACCESS_TOKEN_EXPIRATION);
+    }
+
+    public Duration getRefreshTokenLifetime() {
+        return Duration.ofMillis(REFRESH_TOKEN_EXPIRATION);
+    }
+
+    // Signature and expiry checked; throws JwtException otherwise
+    public Claims parseClaims(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
     public String validateToken(String token) {
         try {
             return Jwts.parserBuilder()
@@ -0,0 +1,138 @@
+package io.bomtech.auth.service;
+
+import com.mongodb.client.result.UpdateResult;
+import io.bomtech.auth.model.RefreshToken;
+import io.bomtech.auth.model.TokenRevocation;
+import io.bomtech.auth.repository.RefreshTokenRepository;
+import io.bomtech.auth.repository.TokenRevocationRepository;
+import io.bomtech.auth.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Presenting a refresh token that another request has just exchanged, with a reuse grace of 10 seconds.
+ */
+class TokenServiceTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private final RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+    private final TokenRevocationRepository revocationRepository = mock(TokenRevocationRepository.class);
+    private final ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final JwtUtil jwtUtil = new JwtUtil();
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtUtil, "secretKeyString", "test-secret-test-secret-test-secret-42");
+        jwtUtil.init();
+        tokenService = new TokenService(refreshTokenRepository, revocationRepository, mongoTemplate, jwtUtil,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenService, "reuseGrace", Duration.ofSeconds(10));
+
+        // Every token presented here has already been exchanged
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+                eq(RefreshToken.class))).thenReturn(Mono.empty());
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(RefreshToken.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(revocationRepository.save(any(TokenRevocation.class))).thenAnswer(call -> Mono.just(call.getArgument(0)));
+    }
+
+    private static RefreshToken stored(String id, Instant usedAt, String successorId) {
+        RefreshToken token = new RefreshToken();
+        token.setId(id);
+        token.setSessionId(SESSION_ID);
+        token.setUsername("alice");
+        token.setRole("USER");
+        token.setIssuedAt(Instant.now().minusSeconds(60));
+        token.setExpiresAt(Instant.now().plus(Duration.ofHours(24)));
+        token.setUsedAt(usedAt);
+        token.setSuccessorId(successorId);
+        return token;
+    }
+
+    private String presented(RefreshToken token) {
+        return jwtUtil.generateRefreshToken(token.getUsername(), token.getRole(), SESSION_ID, token.getId(),
+                Date.from(token.getExpiresAt()));
+    }
+
+    @Test
+    void reuseWithinGraceGetsTheSuccessorToken() {
+        RefreshToken used = stored("token-1", Instant.now().minusSeconds(1), "token-2");
+        when(refreshTokenRepository.findById("token-1")).thenReturn(Mono.just(used));
+        when(refreshTokenRepository.findById("token-2")).thenReturn(Mono.just(stored("token-2", null, null)));
+
+        Map<String, String> pair = tokenService.rotate(presented(used)).block();
+
+        assertThat(pair).containsKeys("accessToken", "refreshToken");
+        assertThat(jwtUtil.parseClaims(pair.get("refreshToken")).getId()).isEqualTo("token-2");
+        assertThat(jwtUtil.parseClaims(pair.get("accessToken")).get(JwtUtil.SESSION_ID_CLAIM)).isEqualTo(SESSION_ID);
+        verify(revocationRepository, never()).save(any());
+    }
+
+    @Test
+    void reuseWithinGraceWaitsForASuccessorStillBeingSaved() {
+        RefreshToken used = stored("token-1", Instant.now().minusSeconds(1), "token-2");
+        when(refreshTokenRepository.findById("token-1")).thenReturn(Mono.just(used));
+        AtomicInteger lookups = new AtomicInteger();
+        when(refreshTokenRepository.findById("token-2")).thenReturn(Mono.defer(() ->
+                lookups.incrementAndGet() < 3 ? Mono.empty() : Mono.just(stored("token-2", null, null))));
+
+        Map<String, String> pair = tokenService.rotate(presented(used)).block();
+
+        assertThat(jwtUtil.parseClaims(pair.get("refreshToken")).getId()).isEqualTo("token-2");
+        assertThat(lookups).hasValue(3);
+    }
+
+    @Test
+    void reuseWithinGraceIsRejectedOnceTheSuccessorWasExchangedToo() {
+        RefreshToken used = stored("token-1", Instant.now().minusSeconds(1), "token-2");
+        when(refreshTokenRepository.findById("token-1")).thenReturn(Mono.just(used));
+        when(refreshTokenRepository.findById("token-2"))
+                .thenReturn(Mono.just(stored("token-2", Instant.now(), "token-3")));
+
+        assertThatThrownBy(() -> tokenService.rotate(presented(used)).block())
+                .isInstanceOf(TokenService.InvalidTokenException.class);
+        verify(revocationRepository, never()).save(any());
+    }
+
+    @Test
+    void reuseAfterGraceRevokesTheSession() {
+        RefreshToken used = stored("token-1", Instant.now().minusSeconds(60), "token-2");
+        when(refreshTokenRepository.findById("token-1")).thenReturn(Mono.just(used));
+
+        assertThatThrownBy(() -> tokenService.rotate(presented(used)).block())
+                .isInstanceOf(TokenService.InvalidTokenException.class);
+        verify(revocationRepository).save(any(TokenRevocation.class));
+    }
+
+    @Test
+    void accessTokensCannotBeExchanged() {
+        String accessToken = jwtUtil.generateAccessToken("alice", "USER", SESSION_ID);
+
+        assertThatThrownBy(() -> tokenService.rotate(accessToken).block())
+                .isInstanceOf(TokenService.InvalidTokenException.class);
+    }
+}
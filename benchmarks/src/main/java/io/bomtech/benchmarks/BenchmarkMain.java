@@ -0,0 +1,34 @@
+package io.bomtech.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Runs JMH with the given options and, unless the caller chose a result
+ * format, writes the results as JSON to results/jmh-&lt;timestamp&gt;.json (relative to the working directory) so runs can be
+ * compared with each other (e.g. on jmh.morethan.io or with jq).
+ */
+public final class BenchmarkMain {
+
+    private static final Path RESULTS_DIR = Path.of("results");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf") && !options.contains("-rff")) {
+            Files.createDirectories(RESULTS_DIR);
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            options.addAll(List.of("-rf", "json", "-rff", RESULTS_DIR.resolve("jmh-" + timestamp + ".json").toString()));
+        }
+        Main.main(options.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,39 @@
+package io.bomtech.device.service;
+
+import io.bomtech.device.model.BackedUpAccount;
+import io.bomtech.device.model.Device;
+import reactor.core.publisher.Mono;
+
+/**
+ * DeviceService whose persistence calls complete immediately, so message benchmarks measure parsing
+ * and dispatch rather than Mongo. Only the methods the device WebSocket handler calls are overridden.
+ */
+public class NoOpDeviceService extends DeviceService {
+
+    private final Device device = new Device();
+    private final BackedUpAccount account = new BackedUpAccount();
+
+    public NoOpDeviceService() {
+        super(null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    @Override
+    public Mono<Device> updateDeviceAccountId(String deviceId, String accountId, String accountPhone) {
+        return Mono.just(device);
+    }
+
+    @Override
+    public Mono<Device> updateBackupStatus(String deviceId, String zaloAccountId, String zaloPhoneNumber, String status, String message, String jobId) {
+        return Mono.just(device);
+    }
+
+    @Override
+    public Mono<BackedUpAccount> saveBackedUpAccount(String deviceId, String userId, String zaloAccountId, String zaloName, String zaloPhone, String backupFilePath) {
+        return Mono.just(account);
+    }
+
+    @Override
+    public Mono<Void> updateFriendsExportStatus(String deviceId, String zaloAccountId, String phoneNumber, String status, String data, String message) {
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,92 @@
+package io.bomtech.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bomtech.benchmarks.BenchmarkSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing the web-client update payloads that {@link DeviceService} pushes on every
+ * status change. The maps have the same shape as the ones built in the service methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdatePayloadSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private String friendsData;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = BenchmarkSupport.objectMapper();
+        StringBuilder data = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            data.append(i == 0 ? "" : ",")
+                .append("{\"id\":\"").append(7000000000000000000L + i).append("\",\"name\":\"Friend ").append(i).append("\"}");
+        }
+        friendsData = data.append(']').toString();
+    }
+
+    @Benchmark
+    public String deviceStatusUpdate() throws JsonProcessingException {
+        Map<String, Object> update = Map.of(
+            "type", "DEVICE_STATUS_UPDATE",
+            "payload", Map.of(
+                "deviceId", "android-100001",
+                "online", true,
+                "lastSeen", Instant.now().toString()
+            )
+        );
+        return objectMapper.writeValueAsString(update);
+    }
+
+    @Benchmark
+    public String backupStatusUpdate() throws JsonProcessingException {
+        Map<String, Object> update = Map.of(
+            "type", "BACKUP_STATUS_UPDATE",
+            "payload", Map.of(
+                "deviceId", "android-100001",
+                "accountId", "8123456789012345678",
+                "status", "UPLOADING",
+                "message", "Uploading backup 42%",
+                "timestamp", Instant.now().toString()
+            )
+        );
+        return objectMapper.writeValueAsString(update);
+    }
+
+    @Benchmark
+    public String friendsExportStatusUpdate() throws JsonProcessingException {
+        Map<String, Object> update = Map.of(
+            "type", "FRIENDS_EXPORT_STATUS_UPDATE",
+            "payload", Map.of(
+                "deviceId", "android-100001",
+                "accountId", "8123456789012345678",
+                "phoneNumber", "84901234567",
+                "status", "COMPLETED",
+                "data", friendsData,
+                "message", "Exported 200 friends",
+                "timestamp", Instant.now()
+            )
+        );
+        return objectMapper.writeValueAsString(update);
+    }
+}
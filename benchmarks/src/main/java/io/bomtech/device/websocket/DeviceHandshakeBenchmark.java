@@ -0,0 +1,54 @@
+package io.bomtech.device.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import io.bomtech.device.model.Device;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device identification from the handshake query string, {@link DeviceWebSocketHandler#extractDeviceInfo}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceHandshakeBenchmark {
+
+    private static final int SESSIONS = 1024;
+
+    private DeviceWebSocketHandler handler;
+    private StubWebSocketSession[] sessions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // extractDeviceInfo only reads the handshake, so no collaborators are needed
+        handler = new DeviceWebSocketHandler(null, null, null, null, null, null, null);
+        sessions = new StubWebSocketSession[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            URI uri = URI.create("wss://backup.example.com/ws/devices?deviceId=android-" + (100000 + i)
+                    + "&deviceName=SM-A525F&os=Android%2013&appVersion=2.4." + (i % 10));
+            sessions[i] = new StubWebSocketSession("session-" + i, uri, new HttpHeaders());
+        }
+    }
+
+    @Benchmark
+    public Device extractDeviceInfo() {
+        next = (next + 1) & (SESSIONS - 1);
+        return handler.extractDeviceInfo(sessions[next]);
+    }
+}
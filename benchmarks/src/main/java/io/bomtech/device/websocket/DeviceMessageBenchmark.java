@@ -0,0 +1,93 @@
+package io.bomtech.device.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bomtech.benchmarks.BenchmarkSupport;
+import io.bomtech.device.service.DeviceService;
+import io.bomtech.device.service.NoOpDeviceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and dispatch of one inbound device message in {@link DeviceWebSocketHandler#processDeviceMessage}.
+ * DeviceService calls complete immediately, so the score excludes Mongo but includes the Reactor chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceMessageBenchmark {
+
+    @Param({"DEVICE_STATUS_UPDATE", "BACKUP_STATUS_UPDATE", "FRIENDS_EXPORT_STATUS_UPDATE", "unknown", "invalid"})
+    public String messageType;
+
+    private StaticApplicationContext applicationContext;
+    private DeviceWebSocketHandler handler;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper objectMapper = BenchmarkSupport.objectMapper();
+        applicationContext = new StaticApplicationContext();
+        applicationContext.getBeanFactory().registerSingleton("deviceService", new NoOpDeviceService());
+        applicationContext.refresh();
+        // Heartbeats, presence, admission and drain are only used by handle(), not by message processing
+        handler = new DeviceWebSocketHandler(objectMapper, applicationContext, null, null, null, null, new SimpleMeterRegistry());
+        message = sampleMessage(messageType);
+        // Fail fast if the stubbed service no longer matches what the handler looks up
+        applicationContext.getBean(DeviceService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public void processDeviceMessage() {
+        handler.processDeviceMessage("device-1", "user-1", message);
+    }
+
+    static String sampleMessage(String type) {
+        return switch (type) {
+            case "DEVICE_STATUS_UPDATE" -> """
+                    {"type":"DEVICE_STATUS_UPDATE","payload":{"accountId":"8123456789012345678","phoneNumber":"84901234567"}}""";
+            case "BACKUP_STATUS_UPDATE" -> """
+                    {"type":"BACKUP_STATUS_UPDATE","payload":{"status":"UPLOADING","message":"Uploading backup 42%",\
+                    "accountId":"8123456789012345678","accountName":"Nguyen Van A","phoneNumber":"84901234567",\
+                    "backupPath":"/sdcard/backup/zalo_8123456789012345678.zip","jobId":"0b1f6c7e-2d4a-4b8e-9a51-3f2c1d0e7a9b"}}""";
+            case "FRIENDS_EXPORT_STATUS_UPDATE" -> """
+                    {"type":"FRIENDS_EXPORT_STATUS_UPDATE","payload":{"status":"COMPLETED","message":"Exported 200 friends",\
+                    "accountId":"8123456789012345678","phoneNumber":"84901234567","data":%s}}""".formatted(friendsData(200));
+            case "unknown" -> """
+                    {"type":"LOCATION_UPDATE","payload":{"lat":10.7769,"lng":106.7009}}""";
+            default -> "{\"type\":\"BACKUP_STATUS_UPDATE\",\"payload\":{\"status\":";
+        };
+    }
+
+    // The app sends the exported friend list as a JSON-encoded string inside the payload
+    private static String friendsData(int friends) {
+        StringJoiner list = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < friends; i++) {
+            list.add("{\"id\":\"" + (7000000000000000000L + i) + "\",\"name\":\"Friend " + i + "\",\"phone\":\"849" + (10000000 + i) + "\"}");
+        }
+        return "\"" + list.toString().replace("\"", "\\\"") + "\"";
+    }
+}
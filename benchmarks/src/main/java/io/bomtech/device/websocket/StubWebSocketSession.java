@@ -0,0 +1,58 @@
+package io.bomtech.device.websocket;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.adapter.AbstractWebSocketSession;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory session for driving the handlers without a server: nothing is ever received, and
+ * everything sent is counted and dropped.
+ */
+public class StubWebSocketSession extends AbstractWebSocketSession<Object> {
+
+    private final LongAdder sent = new LongAdder();
+
+    public StubWebSocketSession(String id, URI uri, HttpHeaders headers) {
+        super(new Object(), id, new HandshakeInfo(uri, headers, Mono.empty(), null), DefaultDataBufferFactory.sharedInstance);
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    @Override
+    public Flux<WebSocketMessage> receive() {
+        return Flux.never();
+    }
+
+    @Override
+    public Mono<Void> send(Publisher<WebSocketMessage> messages) {
+        return Flux.from(messages)
+                .doOnNext(message -> sent.increment())
+                .then();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public Mono<Void> close(CloseStatus status) {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<CloseStatus> closeStatus() {
+        return Mono.never();
+    }
+}
@@ -0,0 +1,85 @@
+package io.bomtech.device.websocket;
+
+import io.bomtech.benchmarks.BenchmarkSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import reactor.core.Disposable;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WebUpdatesWebSocketHandler#sendUpdateToUser} with N connected users of M open tabs each.
+ * Every call targets the next user in turn; the stub sessions consume what the sinks emit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebUpdatesFanOutBenchmark {
+
+    @Param({"100", "10000"})
+    public int users;
+
+    @Param({"1", "4"})
+    public int tabs;
+
+    private WebUpdatesWebSocketHandler handler;
+    private final List<Disposable> connections = new ArrayList<>();
+    private Map<String, Object> update;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handler = new WebUpdatesWebSocketHandler(BenchmarkSupport.objectMapper(), new SimpleMeterRegistry());
+        URI uri = URI.create("wss://backup.example.com/ws/updates");
+        for (int user = 0; user < users; user++) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("X-User-Name", "user-" + user);
+            for (int tab = 0; tab < tabs; tab++) {
+                connections.add(handler.handle(new StubWebSocketSession("session-" + user + "-" + tab, uri, headers)).subscribe());
+            }
+        }
+        update = Map.of(
+            "type", "BACKUP_STATUS_UPDATE",
+            "payload", Map.of(
+                "deviceId", "android-100001",
+                "accountId", "8123456789012345678",
+                "status", "UPLOADING",
+                "message", "Uploading backup 42%",
+                "timestamp", Instant.now().toString()
+            )
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.forEach(Disposable::dispose);
+        connections.clear();
+    }
+
+    @Benchmark
+    public void sendUpdateToUser() {
+        next = next + 1 == users ? 0 : next + 1;
+        handler.sendUpdateToUser("user-" + next, update);
+    }
+}
@@ -0,0 +1,72 @@
+package io.bomtech.gateway.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request token check of the gateway's AuthenticationFilter, {@link JwtUtil#verify}, with the
+ * verified-claims cache disabled (cacheSize=0, one full parse per request) and enabled (a dashboard polling
+ * with the same token). The legacy three-call sequence is kept for comparison with earlier results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+
+    @Param({"0", "10000"})
+    public long cacheSize;
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, cacheSize, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+        // Same claims as the tokens issued by auth-service
+        token = Jwts.builder()
+                .setSubject("benchmark-user")
+                .claim("role", "USER")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    @Benchmark
+    public Optional<VerifiedClaims> verify() {
+        return jwtUtil.verify(token);
+    }
+
+    @Benchmark
+    public void validateAndExtractClaims(Blackhole blackhole) {
+        blackhole.consume(jwtUtil.validateToken(token));
+        blackhole.consume(jwtUtil.getUsernameFromToken(token));
+        blackhole.consume(jwtUtil.getRoleFromToken(token));
+    }
+}
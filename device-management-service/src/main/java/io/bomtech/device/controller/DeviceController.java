@@ -1,10 +1,14 @@
 package io.bomtech.device.controller;
 
+import io.bomtech.device.dto.BackupStageStats;
 import io.bomtech.device.dto.FileUploadResponse; // Import the new DTO
 import io.bomtech.device.dto.TransferAccountsRequest;
 import io.bomtech.device.model.BackedUpAccount;
+import io.bomtech.device.model.BackupJob;
 import io.bomtech.device.model.Device;
+import io.bomtech.device.service.BackupTimelineService;
 import io.bomtech.device.service.DeviceService;
+import io.bomtech.device.service.DrainCoordinator;
 import io.bomtech.device.websocket.DeviceWebSocketHandler; // Import DeviceWebSocketHandler
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +30,9 @@ import org.springframework.web.server.ResponseStatusException; // Import for exp
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/devices")
@@ -35,6 +42,8 @@ public class DeviceController {
 
     private final DeviceService deviceService;
     private final DeviceWebSocketHandler deviceWebSocketHandler; // Add this field
+    private final DrainCoordinator drainCoordinator;
+    private final BackupTimelineService backupTimelineService;
 
     private static final String USER_ID_HEADER = "X-User-Name"; // Use the correct header name
     private static final String USER_ROLE_HEADER = "X-User-Role"; // Use the correct header name
@@ -63,8 +72,10 @@ public class DeviceController {
     }
 
 
-    // Get all devices for the user specified in the header
-    @GetMapping("/user/me")
+    // Get all devices for the user specified in the header.
+    // A JSON array by default; with Accept: application/x-ndjson or text/event-stream each device is written
+    // and flushed as it comes off the Mongo cursor, with the client's pace throttling the cursor
+    @GetMapping(value = "/user/me", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
     public Mono<ResponseEntity<Flux<Device>>> getMyDevices(@RequestHeader(USER_ID_HEADER) String userIdHeader) { // Read correct header
          return getUserIdFromHeader(userIdHeader).map(userId -> {
              log.info("API request: Get devices for user {}", userId);
@@ -184,8 +195,8 @@ public class DeviceController {
                 });
     }
 
-    // Get all backed up accounts for the user specified in the header
-    @GetMapping("/user/me/accounts")
+    // Get all backed up accounts for the user specified in the header (JSON array, NDJSON or SSE, like /user/me)
+    @GetMapping(value = "/user/me/accounts", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
     public Mono<ResponseEntity<Flux<BackedUpAccount>>> getMyBackedUpAccounts(@RequestHeader(USER_ID_HEADER) String userIdHeader) { // Read correct header
          return getUserIdFromHeader(userIdHeader).map(userId -> {
              log.info("API request: Get backed up accounts for user {}", userId);
@@ -194,6 +205,39 @@ public class DeviceController {
          // Error handled by @ExceptionHandler
     }
 
+    // --- Endpoint for backup stage latency percentiles (admins see every user's jobs) ---
+    @GetMapping("/backups/stats")
+    public Mono<ResponseEntity<List<BackupStageStats>>> getBackupStageStats(
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(defaultValue = "7") int days,
+            @RequestHeader(USER_ID_HEADER) String userIdHeader,
+            @RequestHeader(value = USER_ROLE_HEADER, required = false) String role) {
+
+        return getUserIdFromHeader(userIdHeader).flatMap(userId -> {
+            String userFilter = "ADMIN".equalsIgnoreCase(role) ? null : userId;
+            Instant since = Instant.now().minus(Duration.ofDays(Math.max(1, days)));
+            log.info("API request: Backup stage stats since {} grouped by {} for user {}", since, groupBy, userId);
+            return backupTimelineService.getStageStats(since, groupBy, userFilter)
+                    .map(ResponseEntity::ok);
+        }).onErrorResume(ResponseStatusException.class, e ->
+            Mono.just(ResponseEntity.status(e.getStatusCode()).build())
+        );
+    }
+
+    // --- Endpoint for the recent backup job timelines of a device ---
+    @GetMapping(value = "/{deviceId}/backups/jobs", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Mono<ResponseEntity<Flux<BackupJob>>> getBackupJobs(
+            @PathVariable String deviceId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestHeader(USER_ID_HEADER) String userIdHeader) {
+
+        return getUserIdFromHeader(userIdHeader).map(userId -> {
+            log.info("API request: Backup jobs of device {} for user {}", deviceId, userId);
+            return ResponseEntity.ok(backupTimelineService.getRecentJobs(deviceId, Math.min(Math.max(1, limit), 100))
+                    .filter(job -> userId.equals(job.getUserId())));
+        });
+    }
+
     // --- Endpoint to Get a Specific Backup Account by ID ---
     @GetMapping("/backups/{backedUpAccountId}")
     public Mono<ResponseEntity<BackedUpAccount>> getBackedUpAccountById(
@@ -278,7 +322,8 @@ public class DeviceController {
                 });
     }
 
-    @PostMapping("/backups/transfer")
+    // Transferred accounts are written one by one with NDJSON or SSE, so a large transfer reports progress
+    @PostMapping(value = "/backups/transfer", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
     public Mono<ResponseEntity<Flux<BackedUpAccount>>> transferAccounts(
             @RequestHeader(USER_ROLE_HEADER) String role,
             @RequestHeader(USER_ID_HEADER) String userIdHeader,
@@ -322,12 +367,11 @@ public class DeviceController {
             // Handling potential errors from the service layer within the response
             return Mono.just(ResponseEntity.ok()
                 .body(transferredAccounts
-                    .onErrorResume(IllegalArgumentException.class, e -> {
-                        log.warn("Transfer failed due to invalid argument for user {}: {}", requestingUserId, e.getMessage());
-                        // It's tricky to return specific HTTP status codes for individual items in a Flux here.
-                        // The overall operation is OK, but individual items might have failed.
-                        // Consider a more complex response DTO if granular error reporting per account is needed.
-                        return Flux.error(e); // Propagate error to be handled by global error handlers or client
+                    .onErrorResume(ResponseStatusException.class, e -> {
+                        // Unknown or same target user (400), user-service unreachable (503); raised before the first
+                        // account is written, so the status still reaches the client
+                        log.warn("Transfer rejected for user {}: {}", requestingUserId, e.getReason());
+                        return Flux.error(e);
                     })
                     .onErrorResume(SecurityException.class, e -> {
                         log.warn("Transfer failed due to security exception for user {}: {}", requestingUserId, e.getMessage());
@@ -342,4 +386,16 @@ public class DeviceController {
             );
         });
     }
+
+    // Starts a graceful drain of this instance (ahead of a redeploy); the process exits once it completes
+    @PostMapping("/admin/drain")
+    public Mono<ResponseEntity<Void>> drain(@RequestHeader(USER_ROLE_HEADER) String role,
+                                           @RequestHeader(USER_ID_HEADER) String userIdHeader) {
+        if (!"ADMIN".equalsIgnoreCase(role)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        log.info("API request: Drain requested by user {}", userIdHeader);
+        drainCoordinator.drainAndExit();
+        return Mono.just(ResponseEntity.accepted().build());
+    }
 }
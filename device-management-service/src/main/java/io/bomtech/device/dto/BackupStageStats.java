@@ -0,0 +1,29 @@
+package io.bomtech.device.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Stage duration percentiles (in milliseconds) for one group of backup jobs.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackupStageStats {
+    private String group; // appVersion or deviceId, depending on groupBy; "all" when not grouped
+    private int jobs;
+    private Map<String, Percentiles> stages; // Keyed by stage name, plus TOTAL for the whole job
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Percentiles {
+        private int count;
+        private long p50;
+        private long p95;
+        private long p99;
+    }
+}
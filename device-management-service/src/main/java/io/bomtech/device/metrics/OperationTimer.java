@@ -0,0 +1,56 @@
+package io.bomtech.device.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times reactive service operations from subscription to termination, as
+ * {@code device.service.operation{method, outcome}}. Most of this time is Mongo round trips.
+ */
+@Component
+@RequiredArgsConstructor
+public class OperationTimer {
+
+    private final MeterRegistry meterRegistry;
+    // Registered once per (method, outcome) instead of on every operation
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public <T> Mono<T> time(String method, Mono<T> operation) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return operation.doFinally(signal -> sample.stop(timer(method, signal)));
+        });
+    }
+
+    public <T> Flux<T> time(String method, Flux<T> operation) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return operation.doFinally(signal -> sample.stop(timer(method, signal)));
+        });
+    }
+
+    private Timer timer(String method, SignalType signal) {
+        String outcome = switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+        return timers.computeIfAbsent(new TimerKey(method, outcome), key -> Timer.builder("device.service.operation")
+                .description("Latency of DeviceService operations")
+                .tag("method", key.method())
+                .tag("outcome", key.outcome())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private record TimerKey(String method, String outcome) {
+    }
+}
@@ -0,0 +1,105 @@
+package io.bomtech.device.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.HttpHandlerDecoratorFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records bytes, duration and throughput of backup uploads and downloads.
+ * <p>
+ * Upload sizes are counted from the request body as it is read, so chunked uploads without Content-Length
+ * are included. This wraps the HTTP handler rather than running as a WebFilter, because multipart parts are
+ * read from the request the exchange was created with, which a WebFilter can't replace. Download sizes come
+ * from the response Content-Length; the response isn't wrapped, so file downloads keep their zero-copy write.
+ * The duration covers the whole exchange, so throughput reflects what the client actually saw.
+ */
+@Component
+public class TransferMetricsHandlerDecorator implements HttpHandlerDecoratorFactory {
+
+    private final Map<String, TransferMeters> metersByDirection;
+
+    public TransferMetricsHandlerDecorator(MeterRegistry meterRegistry) {
+        this.metersByDirection = Map.of(
+                "upload", TransferMeters.register(meterRegistry, "upload"),
+                "download", TransferMeters.register(meterRegistry, "download"));
+    }
+
+    @Override
+    @NonNull
+    public HttpHandler apply(@NonNull HttpHandler handler) {
+        return (request, response) -> {
+            String direction = direction(request);
+            if (direction == null) {
+                return handler.handle(request, response);
+            }
+            boolean upload = "upload".equals(direction);
+            AtomicLong bodyBytes = new AtomicLong();
+            ServerHttpRequest counted = upload ? new ServerHttpRequestDecorator(request) {
+                @Override
+                @NonNull
+                public Flux<DataBuffer> getBody() {
+                    return super.getBody().doOnNext(buffer -> bodyBytes.addAndGet(buffer.readableByteCount()));
+                }
+            } : request;
+            long startNanos = System.nanoTime();
+            return handler.handle(counted, response).doOnSuccess(v -> record(direction,
+                    upload ? bodyBytes.get() : response.getHeaders().getContentLength(), response, startNanos));
+        };
+    }
+
+    private void record(String direction, long bytes, ServerHttpResponse response, long startNanos) {
+        boolean successful = response.getStatusCode() != null && response.getStatusCode().is2xxSuccessful();
+        if (bytes <= 0 || !successful) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        TransferMeters meters = metersByDirection.get(direction);
+        meters.duration().record(elapsedNanos, TimeUnit.NANOSECONDS);
+        meters.bytes().record(bytes);
+        meters.throughput().record(bytes * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNanos, 1));
+    }
+
+    private String direction(ServerHttpRequest request) {
+        String path = request.getPath().value();
+        HttpMethod method = request.getMethod();
+        if (HttpMethod.POST.equals(method) && path.startsWith("/api/devices/") && path.endsWith("/backup/upload")) {
+            return "upload";
+        }
+        if (HttpMethod.GET.equals(method) && path.startsWith("/api/devices/backups/download/")) {
+            return "download";
+        }
+        return null;
+    }
+
+    private record TransferMeters(Timer duration, DistributionSummary bytes, DistributionSummary throughput) {
+        static TransferMeters register(MeterRegistry meterRegistry, String direction) {
+            return new TransferMeters(
+                    Timer.builder("device.backup.transfer.duration")
+                            .tag("direction", direction)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry),
+                    DistributionSummary.builder("device.backup.transfer.bytes")
+                            .baseUnit("bytes")
+                            .tag("direction", direction)
+                            .register(meterRegistry),
+                    DistributionSummary.builder("device.backup.transfer.throughput")
+                            .baseUnit("bytes_per_second")
+                            .tag("direction", direction)
+                            .register(meterRegistry));
+        }
+    }
+}
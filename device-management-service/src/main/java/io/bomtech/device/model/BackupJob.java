@@ -0,0 +1,47 @@
+package io.bomtech.device.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One backup attempt and the timeline of stages it went through, e.g.
+ * REQUESTED → BACKING_UP → UPLOADING → UPLOAD_STARTED → UPLOAD_STORED → COMPLETED.
+ * Stages reported by the device use its status names; UPLOAD_STARTED/UPLOAD_STORED are recorded
+ * by the server around the file transfer.
+ * <p>
+ * Indexes are created by {@link io.bomtech.device.service.BackupTimelineService} on startup.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "backup_jobs")
+public class BackupJob {
+
+    @Id
+    private String id; // jobId, sent to the device with the start_backup command
+
+    private String deviceId;
+
+    private String userId;
+
+    private String appVersion; // App version of the device when the job started
+    private String status; // Latest stage
+    private Instant requestedAt;
+    private Instant finishedAt; // Set when a terminal stage is recorded, null while the job is open
+    private List<StageEvent> stages = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StageEvent {
+        private String stage;
+        private Instant timestamp;
+        private String message;
+    }
+}
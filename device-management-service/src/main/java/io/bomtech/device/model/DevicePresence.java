@@ -0,0 +1,32 @@
+package io.bomtech.device.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Presence lease of a connected device. A lease is held by the service instance that owns the
+ * device's WebSocket session and is only valid until {@code expiresAt}; the owner renews its leases
+ * in batches, and a TTL index removes leases left behind by an instance that crashed.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "device_presence")
+public class DevicePresence {
+
+    @Id
+    private String id; // deviceId
+
+    private String userId;
+
+    private String ownerInstanceId; // Instance holding the device's WebSocket session
+
+    private Instant acquiredAt;
+
+    private Instant expiresAt;
+
+    // Indexes (ownerInstanceId, TTL on expiresAt) are ensured by PresenceLeaseService on startup
+}
@@ -0,0 +1,12 @@
+package io.bomtech.device.repository;
+
+import io.bomtech.device.model.BackupJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface BackupJobRepository extends ReactiveMongoRepository<BackupJob, String> {
+
+    // Most recent jobs of a device, newest first
+    Flux<BackupJob> findByDeviceIdOrderByRequestedAtDesc(String deviceId, Pageable pageable);
+}
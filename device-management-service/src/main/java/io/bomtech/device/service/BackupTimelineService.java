@@ -0,0 +1,215 @@
+package io.bomtech.device.service;
+
+import com.mongodb.client.model.IndexOptions;
+import io.bomtech.device.dto.BackupStageStats;
+import io.bomtech.device.model.BackupJob;
+import io.bomtech.device.repository.BackupJobRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Records every backup attempt as a {@link BackupJob} timeline and aggregates stage durations.
+ * <p>
+ * Stages are appended with atomic {@code $push} updates, so the device's status messages and the
+ * server-side upload events can land concurrently without overwriting each other. Durations are
+ * derived from the timestamps at query time: the duration of a stage is the time until the next one.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BackupTimelineService {
+
+    public static final String STAGE_REQUESTED = "REQUESTED";
+    public static final String STAGE_UPLOAD_STARTED = "UPLOAD_STARTED";
+    public static final String STAGE_UPLOAD_STORED = "UPLOAD_STORED";
+    private static final String TOTAL = "TOTAL";
+    private static final Set<String> TERMINAL_STAGES = Set.of("COMPLETED", "BACKUP_FAILED", "UPLOAD_FAILED", "CANCELED", "FAILED");
+
+    private final BackupJobRepository backupJobRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${app.backup.stats.max-jobs:50000}")
+    private int maxJobsPerQuery;
+
+    // Auto index creation is off, so the indexes behind the lookups below are created here
+    @PostConstruct
+    public void start() {
+        ensureIndexes().subscribe(
+                null,
+                e -> log.error("Failed to create backup_jobs indexes: {}", e.getMessage()));
+    }
+
+    private Mono<Void> ensureIndexes() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(BackupJob.class))
+                .flatMap(collection -> Flux.concat(
+                        // Latest open job of a device (recordStage without a jobId)
+                        Mono.from(collection.createIndex(new Document("deviceId", 1).append("finishedAt", 1).append("requestedAt", -1),
+                                new IndexOptions().name("device_open_jobs"))),
+                        // Recent jobs of a device
+                        Mono.from(collection.createIndex(new Document("deviceId", 1).append("requestedAt", -1),
+                                new IndexOptions().name("device_recent_jobs"))),
+                        // Stage stats over all jobs, and over one user's jobs
+                        Mono.from(collection.createIndex(new Document("requestedAt", -1).append("finishedAt", 1),
+                                new IndexOptions().name("stats_all"))),
+                        Mono.from(collection.createIndex(new Document("userId", 1).append("requestedAt", -1).append("finishedAt", 1),
+                                new IndexOptions().name("stats_by_user")))
+                ).then());
+    }
+
+    /**
+     * Opens a new job for a backup requested from the dashboard.
+     *
+     * @return The created job; its ID is sent to the device with the start_backup command.
+     */
+    public Mono<BackupJob> startJob(String deviceId, String userId, String appVersion) {
+        Instant now = Instant.now();
+        BackupJob job = new BackupJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setDeviceId(deviceId);
+        job.setUserId(userId);
+        job.setAppVersion(appVersion);
+        job.setStatus(STAGE_REQUESTED);
+        job.setRequestedAt(now);
+        job.getStages().add(new BackupJob.StageEvent(STAGE_REQUESTED, now, null));
+        return backupJobRepository.save(job)
+                .doOnSuccess(saved -> log.debug("Started backup job {} for device {}", saved.getId(), deviceId));
+    }
+
+    /**
+     * Appends a stage to a job. Uses the given jobId when the device echoed it, otherwise the device's
+     * latest open job; if there is none (backup started on the device itself) a new job is opened.
+     */
+    public Mono<Void> recordStage(String deviceId, String userId, String appVersion, String jobId, String stage, String message) {
+        Instant now = Instant.now();
+        String stageMessage = StringUtils.hasText(message) ? message : null;
+        Update update = new Update()
+                .push("stages", new BackupJob.StageEvent(stage, now, stageMessage))
+                .set("status", stage);
+        if (TERMINAL_STAGES.contains(stage)) {
+            update.set("finishedAt", now);
+        }
+
+        Query query = StringUtils.hasText(jobId)
+                ? Query.query(Criteria.where("_id").is(jobId))
+                : Query.query(Criteria.where("deviceId").is(deviceId).and("finishedAt").is(null))
+                        .with(Sort.by(Sort.Direction.DESC, "requestedAt"));
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), BackupJob.class)
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.debug("No open backup job for device {}, opening one at stage {}", deviceId, stage);
+                    BackupJob job = new BackupJob();
+                    job.setId(StringUtils.hasText(jobId) ? jobId : UUID.randomUUID().toString());
+                    job.setDeviceId(deviceId);
+                    job.setUserId(userId);
+                    job.setAppVersion(appVersion);
+                    job.setStatus(stage);
+                    job.setRequestedAt(now);
+                    job.getStages().add(new BackupJob.StageEvent(stage, now, stageMessage));
+                    if (TERMINAL_STAGES.contains(stage)) {
+                        job.setFinishedAt(now);
+                    }
+                    return backupJobRepository.save(job);
+                }))
+                .then();
+    }
+
+    public Flux<BackupJob> getRecentJobs(String deviceId, int limit) {
+        return backupJobRepository.findByDeviceIdOrderByRequestedAtDesc(deviceId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Computes p50/p95/p99 stage durations over finished jobs requested since the given time.
+     *
+     * @param groupBy "appVersion", "deviceId", or anything else for a single group.
+     * @param userId  Restricts to one user's jobs, or null for all jobs.
+     */
+    public Mono<List<BackupStageStats>> getStageStats(Instant since, String groupBy, String userId) {
+        Criteria criteria = Criteria.where("requestedAt").gte(since).and("finishedAt").ne(null);
+        if (userId != null) {
+            criteria = criteria.and("userId").is(userId);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "requestedAt"))
+                .limit(maxJobsPerQuery);
+        query.fields().include("deviceId", "appVersion", "stages");
+
+        Function<BackupJob, String> groupKey = switch (groupBy == null ? "" : groupBy) {
+            case "appVersion" -> job -> job.getAppVersion() != null ? job.getAppVersion() : "unknown";
+            case "deviceId" -> BackupJob::getDeviceId;
+            default -> job -> "all";
+        };
+
+        return mongoTemplate.find(query, BackupJob.class)
+                .collect(() -> new TreeMap<String, GroupDurations>(), (groups, job) ->
+                        groups.computeIfAbsent(groupKey.apply(job), key -> new GroupDurations()).add(job))
+                .map(groups -> {
+                    List<BackupStageStats> stats = new ArrayList<>();
+                    groups.forEach((key, durations) -> stats.add(durations.toStats(key)));
+                    return stats;
+                });
+    }
+
+    // Collects per-stage durations (ms) of the jobs in one group
+    static class GroupDurations {
+        private final Map<String, List<Long>> byStage = new HashMap<>();
+        private int jobs;
+
+        void add(BackupJob job) {
+            List<BackupJob.StageEvent> stages = job.getStages();
+            if (stages == null || stages.size() < 2) {
+                return;
+            }
+            jobs++;
+            List<BackupJob.StageEvent> ordered = new ArrayList<>(stages);
+            ordered.sort(Comparator.comparing(BackupJob.StageEvent::getTimestamp));
+            for (int i = 0; i < ordered.size() - 1; i++) {
+                long millis = Duration.between(ordered.get(i).getTimestamp(), ordered.get(i + 1).getTimestamp()).toMillis();
+                byStage.computeIfAbsent(ordered.get(i).getStage(), stage -> new ArrayList<>()).add(millis);
+            }
+            long total = Duration.between(ordered.get(0).getTimestamp(), ordered.get(ordered.size() - 1).getTimestamp()).toMillis();
+            byStage.computeIfAbsent(TOTAL, stage -> new ArrayList<>()).add(total);
+        }
+
+        BackupStageStats toStats(String group) {
+            Map<String, BackupStageStats.Percentiles> percentiles = new TreeMap<>();
+            byStage.forEach((stage, values) -> {
+                long[] sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+                percentiles.put(stage, new BackupStageStats.Percentiles(sorted.length,
+                        percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99)));
+            });
+            return new BackupStageStats(group, jobs, percentiles);
+        }
+
+        // Nearest-rank percentile of a sorted array
+        static long percentile(long[] sorted, double quantile) {
+            int rank = (int) Math.ceil(quantile * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.bomtech.device.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.bomtech.device.model.Device;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded in-process cache of {@link Device} documents, keyed by deviceId.
+ * <p>
+ * This service is the only writer of the devices collection, so {@link DeviceService} keeps the cache
+ * current by writing through on every save; the TTL is only a safety net against missed updates.
+ * Entries are copied on the way in and out, so callers may mutate what they get (e.g. before saving it)
+ * without other readers seeing unsaved changes.
+ * Hit/miss/eviction counts are published as {@code cache.*} metrics with {@code cache=devices}.
+ */
+@Component
+public class DeviceCache {
+
+    private final Cache<String, Device> cache;
+
+    public DeviceCache(MeterRegistry meterRegistry,
+                       @Value("${app.cache.devices.max-size:10000}") long maxSize,
+                       @Value("${app.cache.devices.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "devices");
+    }
+
+    public Device get(String deviceId) {
+        Device cached = cache.getIfPresent(deviceId);
+        return cached != null ? copy(cached) : null;
+    }
+
+    public void put(Device device) {
+        if (device.getId() != null) {
+            cache.put(device.getId(), copy(device));
+        }
+    }
+
+    public void invalidate(String deviceId) {
+        cache.invalidate(deviceId);
+    }
+
+    private static Device copy(Device device) {
+        Device copy = new Device();
+        copy.setId(device.getId());
+        copy.setUserId(device.getUserId());
+        copy.setDeviceName(device.getDeviceName());
+        copy.setOs(device.getOs());
+        copy.setAppVersion(device.getAppVersion());
+        copy.setLastSeen(device.getLastSeen());
+        copy.setOnline(device.isOnline());
+        copy.setLastBackupStatus(device.getLastBackupStatus());
+        copy.setActiveAccountId(device.getActiveAccountId());
+        copy.setActiveAccountPhone(device.getActiveAccountPhone());
+        copy.setLastBackupTimestamp(device.getLastBackupTimestamp());
+        return copy;
+    }
+}
@@ -1,5 +1,6 @@
 package io.bomtech.device.service;
 
+import io.bomtech.device.metrics.OperationTimer;
 import io.bomtech.device.model.BackedUpAccount;
 import io.bomtech.device.model.Device;
 import io.bomtech.device.repository.BackedUpAccountRepository;
@@ -11,8 +12,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -35,6 +42,15 @@ public class DeviceService {
     private final BackedUpAccountRepository backedUpAccountRepository;
     private final DeviceWebSocketHandler webSocketHandler;
     private final WebUpdatesWebSocketHandler webUpdatesWebSocketHandler; // Declare the handler
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final PresenceLeaseService presenceLeaseService;
+    private final DrainCoordinator drainCoordinator;
+    private final DeviceCache deviceCache;
+    private final OperationTimer operationTimer;
+    private final BackupTimelineService backupTimelineService;
+    private final UserDirectoryClient userDirectoryClient;
+
+    private static final int PRESENCE_LOOKUP_CHUNK = 200;
 
     // Inject storage path from application.yml
     @Value("${app.backup.storage-path:/app/backups}") // Default path if not set
@@ -52,42 +68,64 @@ public class DeviceService {
 
     // --- Device Management ---
 
+    // Read-through: devices are served from the cache, loaded from Mongo on a miss.
+    // Each call gets its own copy, which the caller may change and save
+    private Mono<Device> findDevice(String deviceId) {
+        Device cached = deviceCache.get(deviceId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return deviceRepository.findById(deviceId)
+                .doOnNext(deviceCache::put);
+    }
+
+    // Write-through: every device mutation goes through here so the cache never serves a stale document
+    private Mono<Device> saveDevice(Device device) {
+        return deviceRepository.save(device)
+                .doOnNext(deviceCache::put)
+                .doOnError(e -> deviceCache.invalidate(device.getId())); // The write may still have been applied
+    }
+
     public Flux<Device> getDevicesByUserId(String userId) {
         log.debug("Fetching devices for user: {}", userId);
-        return deviceRepository.findByUserId(userId)
-                // Update online status based on WebSocket connection
-                .map(device -> {
-                    device.setOnline(webSocketHandler.isDeviceConnected(device.getId()));
-                    return device;
-                });
+        return operationTimer.time("getDevicesByUserId", deviceRepository.findByUserId(userId)
+                // Online status comes from presence leases, looked up once per chunk of devices
+                .buffer(PRESENCE_LOOKUP_CHUNK)
+                .concatMap(devices -> presenceLeaseService.findOnlineDeviceIds(devices.stream().map(Device::getId).toList())
+                        .flatMapMany(onlineIds -> Flux.fromIterable(devices)
+                                .map(device -> {
+                                    device.setOnline(onlineIds.contains(device.getId()));
+                                    return device;
+                                }))));
     }
 
     public Mono<Device> getDeviceById(String deviceId) {
         log.debug("Fetching device by ID: {}", deviceId);
-        return deviceRepository.findById(deviceId)
-                .map(device -> {
-                    device.setOnline(webSocketHandler.isDeviceConnected(device.getId()));
-                    return device;
-                });
+        return operationTimer.time("getDeviceById", findDevice(deviceId)
+                .flatMap(device -> presenceLeaseService.isOnline(device.getId())
+                        .map(online -> {
+                            device.setOnline(online); // On this caller's copy; never written back
+                            return device;
+                        })));
     }
 
     // Called when a device connects via WebSocket
     public Mono<Device> handleDeviceConnection(Device device) {
         log.info("Handling connection for device: {}", device.getId());
-        return deviceRepository.findById(device.getId())
+        return operationTimer.time("handleDeviceConnection", drainCoordinator.track(findDevice(device.getId())
                 .flatMap(existingDevice -> {
                     // Device found, update status
                     existingDevice.setOnline(true);
                     existingDevice.setLastSeen(Instant.now());
                     log.debug("Updating existing device {} status to online", existingDevice.getId());
-                    return deviceRepository.save(existingDevice);
+                    return saveDevice(existingDevice);
                 })
                 .switchIfEmpty(Mono.defer(() -> {
                     // Device not found, create and save a new one
                     log.info("Device {} not found. Creating new device record for user {}.", device.getId(), device.getUserId());
                     device.setOnline(true);
                     device.setLastSeen(Instant.now());
-                    return deviceRepository.save(device);
+                    return saveDevice(device);
                 }))
                 .doOnSuccess(savedDevice -> {
                     // Send update to web clients
@@ -100,18 +138,18 @@ public class DeviceService {
                         )
                     );
                     webUpdatesWebSocketHandler.sendUpdateToUser(savedDevice.getUserId(), update);
-                });
+                })));
     }
 
     // Called when a device disconnects
     public Mono<Void> handleDeviceDisconnection(String deviceId) {
         log.info("Handling disconnection for device: {}", deviceId);
-        return deviceRepository.findById(deviceId)
+        return operationTimer.time("handleDeviceDisconnection", drainCoordinator.track(findDevice(deviceId)
                 .flatMap(device -> {
                     device.setOnline(false);
                     device.setLastSeen(Instant.now()); // Record last seen time on disconnect
                     log.debug("Updating device {} status to offline", deviceId);
-                    return deviceRepository.save(device)
+                    return saveDevice(device)
                            .doOnSuccess(savedDevice -> {
                                // Send update to web clients
                                Map<String, Object> update = Map.of(
@@ -125,7 +163,42 @@ public class DeviceService {
                                webUpdatesWebSocketHandler.sendUpdateToUser(savedDevice.getUserId(), update);
                            });
                 })
-                .then();
+                .then()));
+    }
+
+    /**
+     * Marks a batch of devices offline with a single multi-document update and notifies web clients.
+     * Used for sessions evicted by the heartbeat monitor, where many devices can drop at once.
+     *
+     * @param deviceUsers Map of deviceId to the userId that owned the session.
+     * @return A Mono completing when the update has been written.
+     */
+    public Mono<Void> markDevicesOffline(Map<String, String> deviceUsers) {
+        if (deviceUsers.isEmpty()) {
+            return Mono.empty();
+        }
+        Instant now = Instant.now();
+        log.info("Marking {} idle devices offline", deviceUsers.size());
+        Query query = Query.query(Criteria.where("_id").in(deviceUsers.keySet()));
+        Update update = new Update().set("online", false).set("lastSeen", now);
+        return operationTimer.time("markDevicesOffline", drainCoordinator.track(mongoTemplate.updateMulti(query, update, Device.class)
+                // Bulk update bypasses saveDevice, so drop the affected entries instead
+                .doFinally(signal -> deviceUsers.keySet().forEach(deviceCache::invalidate))
+                .doOnSuccess(result -> deviceUsers.forEach((deviceId, userId) -> {
+                    if (userId == null) {
+                        return;
+                    }
+                    Map<String, Object> statusUpdate = Map.of(
+                        "type", "DEVICE_STATUS_UPDATE",
+                        "payload", Map.of(
+                            "deviceId", deviceId,
+                            "online", false,
+                            "lastSeen", now.toString()
+                        )
+                    );
+                    webUpdatesWebSocketHandler.sendUpdateToUser(userId, statusUpdate);
+                }))
+                .then()));
     }
 
     public Mono<Void> initiateBackup(String userId, String deviceId /*, potentially specific accountId */) {
@@ -135,9 +208,14 @@ public class DeviceService {
              return Mono.error(new RuntimeException("Device " + deviceId + " is offline."));
         }
 
-        String backupCommand = "{\"command\": \"start_backup\"}";
-
-        return webSocketHandler.sendCommandToDevice(deviceId, backupCommand)
+        // Open the job timeline first so its ID can travel with the command
+        return findDevice(deviceId)
+                .flatMap(device -> backupTimelineService.startJob(deviceId, userId, device.getAppVersion()))
+                .switchIfEmpty(Mono.defer(() -> backupTimelineService.startJob(deviceId, userId, null)))
+                .flatMap(job -> {
+                    String backupCommand = "{\"command\": \"start_backup\", \"jobId\": \"" + job.getId() + "\"}";
+                    return webSocketHandler.sendCommandToDevice(deviceId, backupCommand);
+                })
                 .doOnSuccess(v -> log.info("Backup command sent successfully to device {}", deviceId))
                 .doOnError(e -> log.error("Failed to send backup command to device {}: {}", deviceId, e.getMessage()));
     }
@@ -159,7 +237,7 @@ public class DeviceService {
     public Mono<BackedUpAccount> saveBackedUpAccount(String deviceId, String userId, String zaloAccountId, String zaloName, String zaloPhone, String backupFilePath) {
          log.info("Saving backed up account info for device {}, userId {}, accountId {}", deviceId, userId, zaloAccountId);
 
-         return backedUpAccountRepository.findByUserIdAndZaloAccountId(userId, zaloAccountId)
+         return operationTimer.time("saveBackedUpAccount", drainCoordinator.track(backedUpAccountRepository.findByUserIdAndZaloAccountId(userId, zaloAccountId)
                 .flatMap(existingAccount -> {
                     log.info("BackedUpAccount for userId {} and zaloAccountId {} already exists. Updating details.", userId, zaloAccountId);
                     existingAccount.setZaloAccountName(zaloName);
@@ -176,17 +254,17 @@ public class DeviceService {
                     return backedUpAccountRepository.save(newAccount)
                             .doOnSuccess(saved -> log.info("Successfully saved new backed up account: {}", saved.getId()));
                 }))
-                .doOnError(e -> log.error("Failed to save or update backed up account for userId {}, zaloAccountId {}: {}", userId, zaloAccountId, e.getMessage()));
+                .doOnError(e -> log.error("Failed to save or update backed up account for userId {}, zaloAccountId {}: {}", userId, zaloAccountId, e.getMessage()))));
     }
 
     public Flux<BackedUpAccount> getBackedUpAccountsByUserId(String userId) {
         log.debug("Fetching backed up accounts for user: {}", userId);
-        return backedUpAccountRepository.findByUserId(userId);
+        return operationTimer.time("getBackedUpAccountsByUserId", backedUpAccountRepository.findByUserId(userId));
     }
 
     public Mono<BackedUpAccount> getBackedUpAccountById(String backedUpAccountId, String requestingUserId) {
         log.debug("Fetching backed up account with id: {} for user: {}", backedUpAccountId, requestingUserId);
-        return backedUpAccountRepository.findById(backedUpAccountId)
+        return operationTimer.time("getBackedUpAccountById", backedUpAccountRepository.findById(backedUpAccountId)
                 .flatMap(account -> {
                     if (!account.getUserId().equals(requestingUserId)) {
                         log.warn("User {} attempted to access unauthorized backed up account {}", requestingUserId, backedUpAccountId);
@@ -197,20 +275,20 @@ public class DeviceService {
                 .switchIfEmpty(Mono.defer(() -> {
                     log.warn("BackedUpAccount with id {} not found", backedUpAccountId);
                     return Mono.empty(); // Or Mono.error(new NotFoundException(...))
-                }));
+                })));
     }
 
     // Method to handle backup status updates from devices
-    public Mono<Device> updateBackupStatus(String deviceId, String zaloAccountId, String zaloPhoneNumber, String status, String message) {
+    public Mono<Device> updateBackupStatus(String deviceId, String zaloAccountId, String zaloPhoneNumber, String status, String message, String jobId) {
          log.info("Updating backup status for device {}: Account={}, Status={}, Message='{}'",
                  deviceId, zaloAccountId, status, message);
-         return deviceRepository.findById(deviceId)
+         return operationTimer.time("updateBackupStatus", drainCoordinator.track(findDevice(deviceId)
                  .flatMap(device -> {
                      device.setActiveAccountId(zaloAccountId);
                      device.setActiveAccountPhone(zaloPhoneNumber);
                      device.setLastBackupStatus(status);
                      device.setLastBackupTimestamp(Instant.now());
-                     return deviceRepository.save(device)
+                     return saveDevice(device)
                             .doOnSuccess(savedDevice -> {
                                 // Send update to web clients
                                 Map<String, Object> update = Map.of(
@@ -224,15 +302,27 @@ public class DeviceService {
                                     )
                                 );
                                 webUpdatesWebSocketHandler.sendUpdateToUser(savedDevice.getUserId(), update);
-                            });
+                            })
+                            .flatMap(savedDevice -> recordBackupStage(savedDevice.getId(), savedDevice.getUserId(),
+                                    savedDevice.getAppVersion(), jobId, status, message)
+                                    .thenReturn(savedDevice));
                  })
-                 .doOnError(e -> log.error("Failed to update backup status for device {}: {}", deviceId, e.getMessage()));
+                 .doOnError(e -> log.error("Failed to update backup status for device {}: {}", deviceId, e.getMessage()))));
     }
 
 
+    // Timeline bookkeeping must never fail the status update or upload it belongs to
+    private Mono<Void> recordBackupStage(String deviceId, String userId, String appVersion, String jobId, String stage, String message) {
+        return backupTimelineService.recordStage(deviceId, userId, appVersion, jobId, stage, message)
+                .onErrorResume(e -> {
+                    log.error("Failed to record backup stage {} for device {}: {}", stage, deviceId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
     public Mono<Void> updateFriendsExportStatus(String deviceId, String zaloAccountId, String phoneNumber, String status, String data, String message) {
         log.info("Updating friends export status for device {}: AccountId={}, Status={}, Message='{}'", deviceId, zaloAccountId, status, message);
-        return deviceRepository.findById(deviceId)
+        return operationTimer.time("updateFriendsExportStatus", drainCoordinator.track(findDevice(deviceId)
             .flatMap(device -> {
                 log.info("Device {} found. Updating friends export status to: {}. AccountId: {}", deviceId, status, zaloAccountId);
                 Map<String, Object> update = Map.of(
@@ -248,10 +338,10 @@ public class DeviceService {
                     )
                 );
                 webUpdatesWebSocketHandler.sendUpdateToUser(device.getUserId(), update);
-                return deviceRepository.save(device);
+                return saveDevice(device);
             })
             .then() // Convert Mono<Device> from save() to Mono<Void>
-            .doOnError(e -> log.error("Error updating friends export status for device {}: {}", deviceId, e.getMessage()));
+            .doOnError(e -> log.error("Error updating friends export status for device {}: {}", deviceId, e.getMessage()))));
     }
     /**
      * Updates only the activeAccountId for a given device and notifies web clients.
@@ -261,7 +351,7 @@ public class DeviceService {
      * @return A Mono emitting the updated Device, or empty if not found.
      */
     public Mono<Device> updateDeviceAccountId(String deviceId, String accountId, String accountPhone) {
-        return deviceRepository.findById(deviceId)
+        return operationTimer.time("updateDeviceAccountId", drainCoordinator.track(findDevice(deviceId)
                 .flatMap(device -> {
                     log.info("Updating accountId for device {}: Old AccountId = {}, New AccountId = {}",
                              deviceId, device.getActiveAccountId(), accountId);
@@ -269,7 +359,7 @@ public class DeviceService {
                     device.setActiveAccountPhone(accountPhone); // Update phone number if provided
                     // Optionally update lastSeen or another timestamp if needed
                     // device.setLastSeen(Instant.now());
-                    return deviceRepository.save(device)
+                    return saveDevice(device)
                            .doOnSuccess(savedDevice -> {
                                // Send update to web clients after successful save
                                Map<String, Object> update = Map.of(
@@ -290,7 +380,7 @@ public class DeviceService {
                                }
                            });
                 })
-                .doOnError(error -> log.error("Error updating accountId for device {}: {}", deviceId, error.getMessage()));
+                .doOnError(error -> log.error("Error updating accountId for device {}: {}", deviceId, error.getMessage()))));
     }
 
     // --- Method to Save Uploaded Backup File ---
@@ -320,8 +410,10 @@ public class DeviceService {
         }
 
         // Transfer the file reactively
-        return filePart.transferTo(destinationPath)
+        return drainCoordinator.track(recordBackupStage(deviceId, userId, null, null, BackupTimelineService.STAGE_UPLOAD_STARTED, null)
+                .then(filePart.transferTo(destinationPath))
                 .then(Mono.fromRunnable(() -> log.info("Successfully saved backup file: {}", destinationPath)))
+                .then(recordBackupStage(deviceId, userId, null, null, BackupTimelineService.STAGE_UPLOAD_STORED, null))
                 .thenReturn(destinationPath.toString()) // Return the full path of the saved file
                 .onErrorMap(IOException.class, e -> { // Map IOExceptions during transfer
                     log.error("IOException during file transfer to {}: {}", destinationPath, e.getMessage());
@@ -330,7 +422,7 @@ public class DeviceService {
                  .onErrorMap(IllegalStateException.class, e -> { // Handle cases like file already transferred
                     log.error("IllegalStateException during file transfer to {}: {}", destinationPath, e.getMessage());
                     return new IOException("Failed to save file, possibly already processed.", e);
-                });
+                }));
     }
 
     // --- Method to get the APK file as a Resource ---
@@ -360,7 +452,7 @@ public class DeviceService {
     // --- Method to Download Backup File ---
     public Mono<Resource> downloadBackupFile(String backedUpAccountId, String requestingUserId) {
         log.info("Attempting to download backup file for accountId: {} by userId: {}", backedUpAccountId, requestingUserId);
-        return backedUpAccountRepository.findById(backedUpAccountId)
+        return operationTimer.time("downloadBackupFile", backedUpAccountRepository.findById(backedUpAccountId)
                 .flatMap(backedUpAccount -> {
                     // Verify if the requesting user is the owner of the backup
                     if (!backedUpAccount.getUserId().equals(requestingUserId)) {
@@ -382,13 +474,13 @@ public class DeviceService {
                     log.warn("No BackedUpAccount found with id: {}", backedUpAccountId);
                     return Mono.error(new IOException("Backup record not found for id: " + backedUpAccountId)); // Or a custom NotFoundException
                 }))
-                .doOnError(e -> log.error("Error during backup file download for accountId {}: {}", backedUpAccountId, e.getMessage()));
+                .doOnError(e -> log.error("Error during backup file download for accountId {}: {}", backedUpAccountId, e.getMessage())));
     }
 
     // --- Method to Delete a BackedUpAccount ---
     public Mono<Void> deleteBackedUpAccount(String backedUpAccountId, String requestingUserId) {
         log.info("User {} attempting to delete backed up account with ID: {}", requestingUserId, backedUpAccountId);
-        return backedUpAccountRepository.findById(backedUpAccountId)
+        return operationTimer.time("deleteBackedUpAccount", backedUpAccountRepository.findById(backedUpAccountId)
             .flatMap(account -> {
                 if (!account.getUserId().equals(requestingUserId)) {
                     log.warn("User {} attempted to delete account {} owned by {}. Denying request.",
@@ -425,23 +517,25 @@ public class DeviceService {
                 // For a delete operation, not finding it could be considered a success or a client error (e.g., 404).
                 // Here, we'll treat it as if the resource is already gone, so complete normally.
                 return Mono.empty(); 
-            }));
+            })));
     }
 
     public Flux<BackedUpAccount> transferBackedUpAccounts(List<String> backedUpAccountIds, String targetUserId, String requestingUserId) {
         log.info("User {} attempting to transfer {} accounts to user {}", requestingUserId, backedUpAccountIds.size(), targetUserId);
         if (requestingUserId.equals(targetUserId)) {
             log.warn("Requesting user {} and target user {} are the same. No transfer needed.", requestingUserId, targetUserId);
-            return Flux.error(new IllegalArgumentException("Target user cannot be the same as the current owner."));
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Target user cannot be the same as the current owner."));
         }
 
-        // It's important to ensure the targetUserId is a valid, existing user.
-        // This might involve a call to the user-service. For this example, we'll assume it's valid.
-        // if (!userService.isValidUser(targetUserId)) { // Pseudocode for user validation
-        //    return Flux.error(new IllegalArgumentException("Target user ID is not valid."));
-        // }
+        // The target must be a registered user; answered from UserDirectoryClient's cache or one batched request.
+        // Checked before the first account is written, so the status can still be 400/503 instead of a failed 200
+        Mono<Void> targetExists = userDirectoryClient.exists(targetUserId)
+            .onErrorMap(e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Could not verify the target user, please retry", e))
+            .flatMap(exists -> exists
+                ? Mono.<Void>empty()
+                : Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Target user does not exist: " + targetUserId)));
 
-        return Flux.fromIterable(backedUpAccountIds)
+        return operationTimer.time("transferBackedUpAccounts", targetExists.thenMany(Flux.fromIterable(backedUpAccountIds))
             .flatMap(accountId -> backedUpAccountRepository.findById(accountId)
                 .switchIfEmpty(Mono.defer(() -> {
                     log.warn("Transfer failed: BackedUpAccount with id {} not found.", accountId);
@@ -462,6 +556,6 @@ public class DeviceService {
                         .doOnSuccess(savedAccount -> log.info("Successfully transferred account {} to user {}", savedAccount.getId(), targetUserId))
                         .doOnError(err -> log.error("Error saving transferred account {}: {}", accountId, err.getMessage()));
                 })
-            );
+            ));
     }
 }
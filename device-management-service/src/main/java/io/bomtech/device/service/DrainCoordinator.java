@@ -0,0 +1,164 @@
+package io.bomtech.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bomtech.device.websocket.DeviceWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drains the service before it exits, triggered by SIGTERM (through the lifecycle stop phase) or by the
+ * admin drain endpoint.
+ * <p>
+ * Draining stops new device sessions, tells connected devices to reconnect after a staggered delay
+ * (optionally to another target), and waits a bounded time for in-flight uploads and status writes
+ * registered through {@link #track(Mono)} before the shutdown continues.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DrainCoordinator implements SmartLifecycle {
+
+    private final ApplicationContext applicationContext;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.drain.timeout:30s}")
+    private Duration drainTimeout;
+
+    @Value("${app.drain.reconnect-spread:30s}")
+    private Duration reconnectSpread;
+
+    @Value("${app.drain.reconnect-target:}")
+    private String reconnectTarget;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<Mono<Void>> drainResult = new AtomicReference<>();
+    private volatile boolean running;
+
+    public boolean isDraining() {
+        return draining.get();
+    }
+
+    /**
+     * Counts the given operation as in-flight work that a drain waits for.
+     */
+    public <T> Mono<T> track(Mono<T> operation) {
+        return Mono.defer(() -> {
+            inFlight.incrementAndGet();
+            return operation.doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * Starts draining (once) and returns a Mono completing when in-flight work finished or the drain timed out.
+     */
+    public Mono<Void> drain() {
+        Mono<Void> drainMono = Mono.defer(this::doDrain).cache();
+        if (drainResult.compareAndSet(null, drainMono)) {
+            return drainMono;
+        }
+        return drainResult.get();
+    }
+
+    /**
+     * Drains, then exits the process. Used by the admin endpoint; SIGTERM goes through {@link #stop(Runnable)}.
+     */
+    public void drainAndExit() {
+        drain().doFinally(signal -> {
+            log.info("Drain finished, exiting.");
+            // Close the context off the reactor thread; it re-enters stop(), which finds the drain already done
+            new Thread(() -> System.exit(SpringApplication.exit(applicationContext, () -> 0)), "drain-exit").start();
+        }).subscribe(null, error -> log.error("Drain failed: {}", error.getMessage()));
+    }
+
+    private Mono<Void> doDrain() {
+        draining.set(true);
+        DeviceWebSocketHandler webSocketHandler = applicationContext.getBean(DeviceWebSocketHandler.class);
+        List<String> deviceIds = new ArrayList<>(webSocketHandler.getConnectedDeviceIds());
+        log.info("Draining: asking {} connected devices to reconnect over {}, waiting up to {} for {} in-flight operations",
+                deviceIds.size(), reconnectSpread, drainTimeout, inFlight.get());
+
+        // Spread reconnects evenly over the window so the next instance doesn't get them all at once
+        long spreadMillis = reconnectSpread.toMillis();
+        for (int i = 0; i < deviceIds.size(); i++) {
+            String deviceId = deviceIds.get(i);
+            long delayMillis = deviceIds.size() > 1 ? spreadMillis * i / (deviceIds.size() - 1) : 0;
+            webSocketHandler.sendCommandToDevice(deviceId, reconnectCommand(delayMillis)).subscribe(
+                null,
+                error -> log.debug("Could not send reconnect command to device {}: {}", deviceId, error.getMessage())
+            );
+        }
+
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(100))
+                .filter(tick -> inFlight.get() == 0)
+                .next()
+                .then()
+                .timeout(drainTimeout, Mono.fromRunnable(() ->
+                        log.warn("Drain timed out after {} with {} operations still in flight", drainTimeout, inFlight.get())))
+                .doOnSuccess(v -> log.info("Drain complete"));
+    }
+
+    private String reconnectCommand(long delayMillis) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("delayMs", delayMillis);
+        if (StringUtils.hasText(reconnectTarget)) {
+            payload.put("target", reconnectTarget);
+        }
+        try {
+            return objectMapper.writeValueAsString(Map.of("command", "reconnect", "payload", payload));
+        } catch (JsonProcessingException e) {
+            // Cannot happen for a map of strings and numbers
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // --- SmartLifecycle: stop() runs on SIGTERM before the web server shuts down ---
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        drain().block(drainTimeout.plusSeconds(5));
+        running = false;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        drain().doFinally(signal -> {
+            running = false;
+            callback.run();
+        }).subscribe(null, error -> log.error("Drain failed: {}", error.getMessage()));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Highest phase stops first, i.e. before the web server's graceful shutdown
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+}
@@ -0,0 +1,208 @@
+package io.bomtech.device.service;
+
+import com.mongodb.client.model.IndexOptions;
+import io.bomtech.device.model.DevicePresence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps device presence as leases in the {@code device_presence} collection.
+ * <p>
+ * Acquire and release requests are queued and written with one ordered bulk operation per flush
+ * interval, and all leases held by this instance are renewed with a single update. A device is online
+ * while it has a lease that has not expired, so a crashed instance stops reporting its devices as
+ * online once the lease TTL runs out, without any per-device write.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceLeaseService {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Value("${app.presence.instance-id:}")
+    private String configuredInstanceId;
+
+    @Value("${app.presence.lease-ttl:90s}")
+    private Duration leaseTtl;
+
+    @Value("${app.presence.renew-interval:30s}")
+    private Duration renewInterval;
+
+    @Value("${app.presence.flush-interval:1s}")
+    private Duration flushInterval;
+
+    // Leases held by this instance: deviceId -> userId
+    private final Map<String, String> heldLeases = new ConcurrentHashMap<>();
+    // Pending writes, applied in order so an acquire followed by a release of the same device stays consistent
+    private final Queue<LeaseChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
+    private String instanceId;
+    private Disposable flusher;
+    private long lastRenewNanos;
+
+    @PostConstruct
+    public void start() {
+        this.instanceId = StringUtils.hasText(configuredInstanceId) ? configuredInstanceId : UUID.randomUUID().toString();
+        this.lastRenewNanos = System.nanoTime();
+
+        // Indexes and startup reconciliation run once, before the first flush
+        Mono<Void> startup = ensureIndexes().then(resetStaleLeases());
+        this.flusher = startup
+                .thenMany(Flux.interval(flushInterval))
+                .concatMap(tick -> flushAndRenew()
+                        .onErrorResume(e -> {
+                            log.error("Failed to write presence leases: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+        log.info("Presence leases owned by instance {} (TTL {}, renewed every {})", instanceId, leaseTtl, renewInterval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.dispose();
+        }
+        // Best effort: release our leases so devices show offline immediately instead of after the TTL
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("ownerInstanceId").is(instanceId)), DevicePresence.class)
+                    .block(Duration.ofSeconds(5));
+        } catch (Exception e) {
+            log.warn("Could not release presence leases on shutdown: {}", e.getMessage());
+        }
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void acquire(String deviceId, String userId) {
+        heldLeases.put(deviceId, userId == null ? "" : userId);
+        pendingChanges.add(new LeaseChange(deviceId, userId, true));
+    }
+
+    public void release(String deviceId) {
+        heldLeases.remove(deviceId);
+        pendingChanges.add(new LeaseChange(deviceId, null, false));
+    }
+
+    /**
+     * Returns the subset of the given devices that currently hold a valid lease on any instance.
+     */
+    public Mono<Set<String>> findOnlineDeviceIds(Collection<String> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        Query query = Query.query(Criteria.where("_id").in(deviceIds).and("expiresAt").gt(Instant.now()));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, DevicePresence.class)
+                .map(DevicePresence::getId)
+                .collect(HashSet::new, Set::add);
+    }
+
+    public Mono<Boolean> isOnline(String deviceId) {
+        if (heldLeases.containsKey(deviceId)) {
+            return Mono.just(true); // Held by this instance, no need to ask the DB
+        }
+        return findOnlineDeviceIds(List.of(deviceId)).map(online -> online.contains(deviceId));
+    }
+
+    private Mono<Void> ensureIndexes() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(DevicePresence.class))
+                .flatMap(collection -> Flux.concat(
+                        Mono.from(collection.createIndex(new Document("expiresAt", 1),
+                                new IndexOptions().expireAfter(0L, TimeUnit.SECONDS))),
+                        Mono.from(collection.createIndex(new Document("ownerInstanceId", 1)))
+                ).then());
+    }
+
+    // One bulk delete on startup: leases left by a previous run of this instance, and any already expired
+    private Mono<Void> resetStaleLeases() {
+        Query stale = Query.query(new Criteria().orOperator(
+                Criteria.where("ownerInstanceId").is(instanceId),
+                Criteria.where("expiresAt").lt(Instant.now())));
+        return mongoTemplate.remove(stale, DevicePresence.class)
+                .doOnSuccess(result -> log.info("Reset {} stale presence leases on startup", result.getDeletedCount()))
+                .then();
+    }
+
+    private Mono<Void> flushAndRenew() {
+        List<LeaseChange> changes = new ArrayList<>();
+        LeaseChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            changes.add(change);
+        }
+        Mono<Void> flush = changes.isEmpty() ? Mono.empty() : writeChanges(changes);
+
+        long now = System.nanoTime();
+        if (now - lastRenewNanos < renewInterval.toNanos()) {
+            return flush;
+        }
+        lastRenewNanos = now;
+        return flush.then(renewHeldLeases());
+    }
+
+    private Mono<Void> writeChanges(List<LeaseChange> changes) {
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(leaseTtl);
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, DevicePresence.class);
+        for (LeaseChange c : changes) {
+            if (c.acquire()) {
+                bulk.upsert(Query.query(Criteria.where("_id").is(c.deviceId())), new Update()
+                        .set("userId", c.userId())
+                        .set("ownerInstanceId", instanceId)
+                        .set("acquiredAt", now)
+                        .set("expiresAt", expiresAt));
+            } else {
+                // Only drop the lease if we still own it; the device may already be connected elsewhere
+                bulk.remove(Query.query(Criteria.where("_id").is(c.deviceId()).and("ownerInstanceId").is(instanceId)));
+            }
+        }
+        return bulk.execute()
+                .doOnSuccess(result -> log.debug("Wrote {} presence lease changes", changes.size()))
+                .then();
+    }
+
+    private Mono<Void> renewHeldLeases() {
+        if (heldLeases.isEmpty()) {
+            return Mono.empty();
+        }
+        Query owned = Query.query(Criteria.where("ownerInstanceId").is(instanceId));
+        return mongoTemplate.updateMulti(owned, Update.update("expiresAt", Instant.now().plus(leaseTtl)), DevicePresence.class)
+                .doOnSuccess(result -> log.debug("Renewed {} presence leases", result.getModifiedCount()))
+                .then();
+    }
+
+    private record LeaseChange(String deviceId, String userId, boolean acquire) {
+    }
+}
@@ -0,0 +1,173 @@
+package io.bomtech.device.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers "does this user exist?" against user-service's {@code POST /users/exists}.
+ * <p>
+ * Results are cached (known users for {@code positive-ttl}, unknown ones only for {@code negative-ttl}, so a
+ * user registered a moment ago is found soon). Lookups that miss the cache are collected for up to
+ * {@code batch-window} (or {@code max-batch-size} names) and sent as one request; concurrent lookups of the
+ * same name share one pending answer. Cache effectiveness is exported as {@code cache.*{cache=users.exists}},
+ * batch sizes as {@code users.exists.batch.size}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserDirectoryClient {
+
+    private static final String EXISTS_URI = "lb://user-service/users/exists";
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.user-directory.batch-window:10ms}")
+    private Duration batchWindow;
+
+    @Value("${app.user-directory.max-batch-size:100}")
+    private int maxBatchSize;
+
+    @Value("${app.user-directory.request-timeout:3s}")
+    private Duration requestTimeout;
+
+    @Value("${app.user-directory.positive-ttl:10m}")
+    private Duration positiveTtl;
+
+    @Value("${app.user-directory.negative-ttl:30s}")
+    private Duration negativeTtl;
+
+    @Value("${app.user-directory.max-size:10000}")
+    private long maxSize;
+
+    private final Map<String, Sinks.One<Boolean>> pending = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> lookups = Sinks.many().unicast().onBackpressureBuffer();
+    private Cache<String, Boolean> existence;
+    private DistributionSummary batchSizes;
+    private Counter failures;
+    private Disposable batcher;
+
+    @PostConstruct
+    public void start() {
+        existence = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Boolean>() {
+                    @Override
+                    public long expireAfterCreate(String username, Boolean exists, long currentTime) {
+                        return (exists ? positiveTtl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String username, Boolean exists, long currentTime, long currentDuration) {
+                        return expireAfterCreate(username, exists, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String username, Boolean exists, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, existence, "users.exists");
+        batchSizes = DistributionSummary.builder("users.exists.batch.size")
+                .description("Usernames per request to user-service")
+                .register(meterRegistry);
+        failures = Counter.builder("users.exists.failures")
+                .description("Batches that could not be checked against user-service")
+                .register(meterRegistry);
+
+        WebClient client = webClientBuilder.build();
+        this.batcher = lookups.asFlux()
+                .bufferTimeout(maxBatchSize, batchWindow)
+                .flatMap(batch -> lookup(client, batch))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+
+    /**
+     * Whether a user with this username exists. Signals an error if user-service can't be asked; callers decide
+     * whether that blocks the operation.
+     */
+    public Mono<Boolean> exists(String username) {
+        return Mono.defer(() -> {
+            Boolean cached = existence.getIfPresent(username);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            Sinks.One<Boolean> created = Sinks.one();
+            Sinks.One<Boolean> answer = pending.putIfAbsent(username, created);
+            if (answer == null) {
+                answer = created;
+                Sinks.EmitResult result;
+                // The unicast sink takes one emitter at a time
+                synchronized (lookups) {
+                    result = lookups.tryEmitNext(username);
+                }
+                if (result.isFailure()) {
+                    // Batcher gone (shutdown) or its buffer refused the name: fail this lookup and whoever joined it
+                    pending.remove(username, created);
+                    created.tryEmitError(new IllegalStateException("Could not queue user lookup: " + result));
+                }
+            }
+            return answer.asMono();
+        });
+    }
+
+    private Mono<Void> lookup(WebClient client, List<String> usernames) {
+        batchSizes.record(usernames.size());
+        return client.post()
+                .uri(EXISTS_URI)
+                .bodyValue(usernames)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Boolean>>() {})
+                .timeout(requestTimeout)
+                .doOnNext(results -> usernames.forEach(username -> {
+                    boolean exists = Boolean.TRUE.equals(results.get(username));
+                    existence.put(username, exists); // Before the pending entry goes, so no lookup falls in between
+                    Sinks.One<Boolean> answer = pending.remove(username);
+                    if (answer != null) {
+                        answer.tryEmitValue(exists);
+                    }
+                }))
+                .onErrorResume(e -> {
+                    log.warn("Checking {} usernames against user-service failed: {}", usernames.size(), e.getMessage());
+                    failures.increment();
+                    usernames.forEach(username -> {
+                        Sinks.One<Boolean> answer = pending.remove(username);
+                        if (answer != null) {
+                            answer.tryEmitError(e);
+                        }
+                    });
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,124 @@
+package io.bomtech.device.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for new device WebSocket sessions.
+ * <p>
+ * A token bucket (kept as a single theoretical-arrival-time value, updated with CAS) limits how many
+ * sessions per second get past the handshake, and with it the connection writes to Mongo. Sessions over
+ * the rate wait for their slot as long as the wait stays under {@code max-queue-wait}; the rest are
+ * rejected with a retry-after hint that includes random jitter, so a reconnect storm after a deploy is
+ * spread out instead of coming back all at once.
+ */
+@Component
+@Slf4j
+public class ConnectionAdmissionController {
+
+    private final AtomicLong theoreticalArrivalNanos = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger queuedSessions = new AtomicInteger();
+
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final long maxQueueWaitNanos;
+    private final Duration retryAfterBase;
+    private final Duration retryAfterJitter;
+
+    private final Timer connectLatency;
+    private final Counter admitted;
+    private final Counter rejected;
+
+    public ConnectionAdmissionController(MeterRegistry meterRegistry,
+                                         @Value("${app.websocket.admission.sessions-per-second:50}") double sessionsPerSecond,
+                                         @Value("${app.websocket.admission.burst:100}") int burst,
+                                         @Value("${app.websocket.admission.max-queue-wait:5s}") Duration maxQueueWait,
+                                         @Value("${app.websocket.admission.retry-after-base:10s}") Duration retryAfterBase,
+                                         @Value("${app.websocket.admission.retry-after-jitter:20s}") Duration retryAfterJitter) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / sessionsPerSecond);
+        this.burstToleranceNanos = intervalNanos * Math.max(burst - 1, 0);
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.retryAfterBase = retryAfterBase;
+        this.retryAfterJitter = retryAfterJitter;
+
+        this.connectLatency = Timer.builder("device.ws.connect.latency")
+                .description("Time from device handshake to the connection being recorded, including admission wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.admitted = Counter.builder("device.ws.handshake.admitted").register(meterRegistry);
+        this.rejected = Counter.builder("device.ws.handshake.rejected").register(meterRegistry);
+        meterRegistry.gauge("device.ws.handshake.queued", queuedSessions);
+    }
+
+    /**
+     * Waits for an admission slot.
+     *
+     * @return A Mono completing once the session may proceed, or failing with
+     *         {@link AdmissionRejectedException} if the wait would exceed the configured queue limit.
+     */
+    public Mono<Void> admit() {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos < 0) {
+            rejected.increment();
+            return Mono.error(new AdmissionRejectedException(retryAfter()));
+        }
+        admitted.increment();
+        if (waitNanos == 0) {
+            return Mono.empty();
+        }
+        queuedSessions.incrementAndGet();
+        return Mono.delay(Duration.ofNanos(waitNanos))
+                .doFinally(signal -> queuedSessions.decrementAndGet())
+                .then();
+    }
+
+    public void recordConnectLatency(long startNanos) {
+        connectLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Returns how long the caller has to wait for its slot, or -1 if that is longer than the queue allows
+    long reserve(long now) {
+        while (true) {
+            long tat = theoreticalArrivalNanos.get();
+            long base = Math.max(tat, now);
+            long wait = Math.max(0, base - burstToleranceNanos - now);
+            if (wait > maxQueueWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(tat, base + intervalNanos)) {
+                return wait;
+            }
+        }
+    }
+
+    private Duration retryAfter() {
+        long jitterMillis = retryAfterJitter.toMillis() > 0
+                ? ThreadLocalRandom.current().nextLong(retryAfterJitter.toMillis() + 1)
+                : 0;
+        return retryAfterBase.plusMillis(jitterMillis);
+    }
+
+    public static class AdmissionRejectedException extends RuntimeException {
+        private final Duration retryAfter;
+
+        public AdmissionRejectedException(Duration retryAfter) {
+            super("Device connection rate exceeded, retry after " + retryAfter.toSeconds() + "s");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
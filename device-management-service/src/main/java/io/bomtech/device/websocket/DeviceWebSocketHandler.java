@@ -6,19 +6,35 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.bomtech.device.model.Device;
 import io.bomtech.device.service.DeviceService;
+import io.bomtech.device.service.DrainCoordinator;
+import io.bomtech.device.service.PresenceLeaseService;
+import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpHeaders; // Import HttpHeaders
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -27,12 +43,54 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
 
     private final ObjectMapper objectMapper;
     private final ApplicationContext applicationContext;
+    private final HeartbeatMonitor heartbeatMonitor;
+    private final PresenceLeaseService presenceLeaseService;
+    private final ConnectionAdmissionController admissionController;
+    private final DrainCoordinator drainCoordinator;
+    private final MeterRegistry meterRegistry;
     private static final String USER_ID_HEADER = "X-User-Name"; // Use the correct header name
+    // "Try Again Later" close code (RFC 6455 registry), sent when admission control rejects a session
+    private static final int CLOSE_TRY_AGAIN_LATER = 1013;
+    // Message types reported as their own metric tag; anything else is tagged "unknown" to bound cardinality
+    private static final Set<String> KNOWN_MESSAGE_TYPES = Set.of("DEVICE_STATUS_UPDATE", "BACKUP_STATUS_UPDATE", "FRIENDS_EXPORT_STATUS_UPDATE");
 
     // Store active sessions, mapping deviceId to session and sink
     // Using Sinks.Many for broadcasting messages to specific clients if needed later
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
     private final Map<String, Sinks.Many<String>> sinks = new ConcurrentHashMap<>(); // For sending messages TO devices
+    // Devices evicted by the heartbeat monitor (deviceId -> userId), written to the DB in one batch per tick
+    private final Queue<Map.Entry<String, String>> evictedDevices = new ConcurrentLinkedQueue<>();
+    // device.ws.messages timer per type tag (KNOWN_MESSAGE_TYPES, "unknown", "invalid"), built once in init()
+    private final Map<String, Timer> messageTimers = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        heartbeatMonitor.addTickListener(this::flushEvictedDevices);
+        Gauge.builder("device.ws.sessions", sessions, Map::size)
+                .description("Open device WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("device.ws.outbound.buffered", sinks, DeviceWebSocketHandler::bufferedMessages)
+                .description("Commands queued in device sinks and not yet written to the socket")
+                .register(meterRegistry);
+        Set<String> metricTypes = new HashSet<>(KNOWN_MESSAGE_TYPES);
+        metricTypes.add("unknown");
+        metricTypes.add("invalid");
+        for (String type : metricTypes) {
+            messageTimers.put(type, Timer.builder("device.ws.messages")
+                    .description("Inbound device messages and their processing time")
+                    .tag("type", type)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static double bufferedMessages(Map<String, ? extends Sinks.Many<?>> sinks) {
+        int buffered = 0;
+        for (Sinks.Many<?> sink : sinks.values()) {
+            Integer count = Scannable.from(sink).scan(Scannable.Attr.BUFFERED);
+            buffered += count == null ? 0 : count;
+        }
+        return buffered;
+    }
 
     @Override
     public Mono<Void> handle(WebSocketSession session) {
@@ -47,48 +105,126 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
         String userId = headers.getFirst(USER_ID_HEADER); // Read correct header
         reqDevice.setUserId(userId); // Set userId in device object
 
+        if (drainCoordinator.isDraining()) {
+            log.info("Rejecting device {} (session {}): service is draining", reqDevice.getId(), session.getId());
+            return session.close(CloseStatus.SERVICE_RESTARTED.withReason("draining"));
+        }
+
+        // Admission control: caps how fast new sessions (and their DB writes) are accepted after a deploy
+        long startNanos = System.nanoTime();
+        return admissionController.admit()
+                .then(Mono.defer(() -> openDeviceSession(session, reqDevice, startNanos)))
+                .onErrorResume(ConnectionAdmissionController.AdmissionRejectedException.class, e -> {
+                    long retryAfterSeconds = e.getRetryAfter().toSeconds();
+                    log.warn("Rejecting device {} (session {}): {}", reqDevice.getId(), session.getId(), e.getMessage());
+                    return session.close(new CloseStatus(CLOSE_TRY_AGAIN_LATER, "retry-after=" + retryAfterSeconds));
+                });
+    }
 
+    private Mono<Void> openDeviceSession(WebSocketSession session, Device reqDevice, long startNanos) {
+        String userId = reqDevice.getUserId();
         log.info("Device connected: {} (User: {}) with session ID: {}", reqDevice.getId(), userId, session.getId());
 
         Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
-        sinks.put(reqDevice.getId(), sink);
-        sessions.put(reqDevice.getId(), session);
+        // Pings go through their own sink so the heartbeat thread never races command emission
+        Sinks.Many<WebSocketMessage> pingSink = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Many<String> previousSink = sinks.put(reqDevice.getId(), sink);
+        WebSocketSession previousSession = sessions.put(reqDevice.getId(), session);
+        presenceLeaseService.acquire(reqDevice.getId(), userId);
+        if (previousSession != null && previousSession != session) {
+            // Reconnected (e.g. after a network switch) while the old socket may still be half-open: close it,
+            // its own cleanup is skipped since it is no longer the registered session
+            log.info("Device {} reconnected; closing previous session {}", reqDevice.getId(), previousSession.getId());
+            if (previousSink != null) {
+                previousSink.tryEmitComplete();
+            }
+            closeQuietly(reqDevice.getId(), previousSession, CloseStatus.GOING_AWAY.withReason("Replaced by a newer connection"));
+        }
 
         // Call service to handle connection logic (update DB status)
         // We subscribe here to trigger the action but don't block the handler setup
         DeviceService deviceService = applicationContext.getBean(DeviceService.class);
         deviceService.handleDeviceConnection(reqDevice).subscribe(
-            device -> log.debug("Device {} connection handled successfully.", reqDevice.getId()),
+            device -> {
+                admissionController.recordConnectLatency(startNanos);
+                log.debug("Device {} connection handled successfully.", reqDevice.getId());
+            },
             error -> log.error("Error handling connection for device {}: {}", reqDevice.getId(), error.getMessage())
         );
 
         final String finalDeviceId = reqDevice.getId(); // Use the deviceId extracted from header
         final String finalUserId = userId; // Use the userId extracted from header
 
+        HeartbeatMonitor.Registration heartbeat = heartbeatMonitor.register(finalDeviceId,
+                () -> pingSink.tryEmitNext(session.pingMessage(factory -> factory.wrap(new byte[0]))),
+                () -> evictIdleDevice(finalDeviceId, finalUserId, session, sink));
+
         Mono<Void> input = session.receive()
+                .doOnNext(message -> heartbeat.touch()) // Text messages and pongs both count as liveness
+                .filter(message -> message.getType() == WebSocketMessage.Type.TEXT)
                 .map(WebSocketMessage::getPayloadAsText)
                 .doOnNext(message -> processDeviceMessage(finalDeviceId, finalUserId, message))
                 .doOnError(error -> log.error("Error receiving message from device {}: {}", finalDeviceId, error.getMessage()))
                 .doFinally(signalType -> {
                     log.info("Device disconnected: {} (Session ID: {}), Signal: {}", finalDeviceId, session.getId(), signalType);
-                    sessions.remove(finalDeviceId);
-                    sinks.remove(finalDeviceId);
-                    // Call service to handle disconnection (update DB status)
-                    // Use subscribe() to trigger the async operation
-                    deviceService.handleDeviceDisconnection(finalDeviceId).subscribe(
-                        null, // No action needed on completion
-                        error -> log.error("Error handling disconnection for device {}: {}", finalDeviceId, error.getMessage())
-                    );
+                    heartbeat.cancel();
+                    // Only clean up if this session is still the registered one: it may have been
+                    // evicted by the heartbeat monitor or replaced by a newer connection of the same device
+                    if (sessions.remove(finalDeviceId, session)) {
+                        sinks.remove(finalDeviceId, sink);
+                        presenceLeaseService.release(finalDeviceId);
+                        // Call service to handle disconnection (update DB status)
+                        // Use subscribe() to trigger the async operation
+                        deviceService.handleDeviceDisconnection(finalDeviceId).subscribe(
+                            null, // No action needed on completion
+                            error -> log.error("Error handling disconnection for device {}: {}", finalDeviceId, error.getMessage())
+                        );
+                    }
                 })
                 .then();
 
-        Mono<Void> output = session.send(sink.asFlux().map(session::textMessage));
+        Mono<Void> output = session.send(Flux.merge(sink.asFlux().map(session::textMessage), pingSink.asFlux()));
 
         return Mono.zip(input, output).then();
     }
 
-    // Placeholder for deviceId extraction logic
-    private Device extractDeviceInfo(WebSocketSession session) {
+    // Called on the heartbeat thread when a device stopped answering pings (e.g. half-open TCP connection).
+    // The socket is always closed; map, lease and DB cleanup only if no newer connection replaced it
+    private void evictIdleDevice(String deviceId, String userId, WebSocketSession session, Sinks.Many<String> sink) {
+        sink.tryEmitComplete();
+        if (sessions.remove(deviceId, session)) {
+            sinks.remove(deviceId, sink);
+            presenceLeaseService.release(deviceId);
+            evictedDevices.add(new AbstractMap.SimpleImmutableEntry<>(deviceId, userId));
+        }
+        closeQuietly(deviceId, session, CloseStatus.GOING_AWAY.withReason("Heartbeat timeout"));
+    }
+
+    private static void closeQuietly(String deviceId, WebSocketSession session, CloseStatus status) {
+        session.close(status).subscribe(
+            null,
+            error -> log.debug("Error closing session {} of device {}: {}", session.getId(), deviceId, error.getMessage())
+        );
+    }
+
+    private void flushEvictedDevices() {
+        if (evictedDevices.isEmpty()) {
+            return;
+        }
+        Map<String, String> batch = new HashMap<>();
+        Map.Entry<String, String> evicted;
+        while ((evicted = evictedDevices.poll()) != null) {
+            batch.put(evicted.getKey(), evicted.getValue());
+        }
+        DeviceService deviceService = applicationContext.getBean(DeviceService.class);
+        deviceService.markDevicesOffline(batch).subscribe(
+            null,
+            error -> log.error("Error marking {} evicted devices offline: {}", batch.size(), error.getMessage())
+        );
+    }
+
+    // Placeholder for deviceId extraction logic (package-private for the benchmarks module)
+    Device extractDeviceInfo(WebSocketSession session) {
         String query = session.getHandshakeInfo().getUri().getQuery();
         Device device = null;
         if (query != null) {
@@ -119,11 +255,15 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
         return null; // Or throw an exception / close session immediately
     }
 
-    private void processDeviceMessage(String deviceId, String userId, String message) {
+    // Package-private for the benchmarks module
+    void processDeviceMessage(String deviceId, String userId, String message) {
+        long startNanos = System.nanoTime();
+        String metricType = "invalid"; // Stays "invalid" if the message cannot be parsed
         try {
             JsonNode root = objectMapper.readTree(message);
             String messageType = root.path("type").asText();
             JsonNode payload = root.path("payload"); // Get payload node
+            metricType = KNOWN_MESSAGE_TYPES.contains(messageType) ? messageType : "unknown";
 
             log.info("Processing message type '{}' from device {}", messageType, deviceId);
             DeviceService deviceService = applicationContext.getBean(DeviceService.class);
@@ -150,12 +290,13 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
                     String accountName = payload.has("accountName") ? payload.path("accountName").asText() : "";
                     String phoneNumber = payload.has("phoneNumber") ? payload.path("phoneNumber").asText() : "";
                     String backupPath = payload.has("backupPath") ? payload.path("backupPath").asText() : "";
+                    String jobId = payload.has("jobId") ? payload.path("jobId").asText() : null; // Echoed from start_backup, if the app supports it
 
 
                     log.info("Received BACKUP_STATUS_UPDATE for device {}: Status={}, AccountId={}, Message='{}'",
                              deviceId, status, accountId, statusMessage);
 
-                    deviceService.updateBackupStatus(deviceId, accountId, phoneNumber, status, statusMessage)
+                    deviceService.updateBackupStatus(deviceId, accountId, phoneNumber, status, statusMessage, jobId)
                         .flatMap(updatedDevice -> {
                             if ("COMPLETED".equals(status)) {
                                 log.info("Backup COMPLETED for device {}, saving account details for AccountId={}", deviceId, accountId);
@@ -195,6 +336,9 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
             log.error("Failed to parse JSON message from device {}: {}", deviceId, message, e);
         } catch (Exception e) {
             log.error("Failed to process message from device {}: {}", deviceId, message, e);
+        } finally {
+            // Count doubles as the inbound message rate; covers parsing and dispatch, not the async DB writes
+            messageTimers.get(metricType).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
         }
     }
 
@@ -212,6 +356,10 @@ public class DeviceWebSocketHandler implements WebSocketHandler {
         }
     }
 
+     public Set<String> getConnectedDeviceIds() {
+         return Set.copyOf(sessions.keySet());
+     }
+
      // Method to check if a device is connected
      public boolean isDeviceConnected(String deviceId) {
          return sessions.containsKey(deviceId);
@@ -0,0 +1,218 @@
+package io.bomtech.device.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives server-side ping/pong heartbeats and idle detection for device sessions.
+ * <p>
+ * All sessions share a single hashed timing wheel ticked by one thread, so the cost of
+ * keeping 100k sessions under watch is one small entry per session instead of one timer each.
+ * Inbound traffic only updates a timestamp on the entry ({@link Registration#touch()});
+ * entries are re-bucketed lazily when their slot comes up, which keeps the hot path lock-free.
+ */
+@Component
+@Slf4j
+public class HeartbeatMonitor {
+
+    @Value("${app.websocket.heartbeat.ping-interval:20s}")
+    private Duration pingInterval;
+
+    @Value("${app.websocket.heartbeat.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${app.websocket.heartbeat.tick-duration:1s}")
+    private Duration tickDuration;
+
+    @Value("${app.websocket.heartbeat.wheel-size:512}")
+    private int wheelSize;
+
+    // New registrations are handed over to the wheel thread through this queue
+    private final Queue<Registration> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    // Callbacks run on the wheel thread once per tick, after idle sessions have been reported
+    private final List<Runnable> tickListeners = new CopyOnWriteArrayList<>();
+    // Time source of the wheel and of activity timestamps; tests replace it to drive the wheel by hand
+    private LongSupplier nanoClock = System::nanoTime;
+
+    private List<Registration>[] wheel;
+    private int mask;
+    private long tickNanos;
+    private long pingNanos;
+    private long idleNanos;
+    private long startNanos;
+    private long currentTick;
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void start() {
+        int size = initWheel();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-heartbeat-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        log.info("Heartbeat monitor started: ping every {}, idle timeout {}, {} slots of {}",
+                pingInterval, idleTimeout, size, tickDuration);
+    }
+
+    // Sets up an empty wheel starting at the current time; returns the number of slots
+    @SuppressWarnings("unchecked")
+    int initWheel() {
+        // Round the wheel up to a power of two so the slot index is a mask instead of a modulo
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.tickNanos = tickDuration.toNanos();
+        this.pingNanos = pingInterval.toNanos();
+        this.idleNanos = idleTimeout.toNanos();
+        this.startNanos = nanoClock.getAsLong();
+        return size;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts watching a session.
+     *
+     * @param key    Identifier used in logs (the deviceId).
+     * @param pinger Sends a ping frame to the peer; called on the wheel thread, must not block.
+     * @param onIdle Called once on the wheel thread when the peer stayed silent for the idle timeout.
+     * @return The registration the caller uses to report activity and to stop watching.
+     */
+    public Registration register(String key, Runnable pinger, Runnable onIdle) {
+        Registration registration = new Registration(key, pinger, onIdle, nanoClock);
+        pendingRegistrations.add(registration);
+        return registration;
+    }
+
+    public void addTickListener(Runnable listener) {
+        tickListeners.add(listener);
+    }
+
+    // Runs on the wheel thread, once per tick
+    void advance() {
+        try {
+            long now = nanoClock.getAsLong();
+            // Catch up on every tick that elapsed, in case the thread was delayed
+            while (startNanos + (currentTick + 1) * tickNanos <= now) {
+                currentTick++;
+                drainRegistrations(now);
+                processSlot(now);
+            }
+            for (Runnable listener : tickListeners) {
+                listener.run();
+            }
+        } catch (Exception e) {
+            // Never let an exception cancel the scheduled ticker
+            log.error("Heartbeat wheel tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void drainRegistrations(long now) {
+        Registration registration;
+        while ((registration = pendingRegistrations.poll()) != null) {
+            if (!registration.cancelled) {
+                schedule(registration, registration.lastActivityNanos + pingNanos, now);
+            }
+        }
+    }
+
+    private void processSlot(long now) {
+        int index = (int) (currentTick & mask);
+        List<Registration> due = wheel[index];
+        wheel[index] = new ArrayList<>();
+
+        for (Registration registration : due) {
+            if (registration.cancelled) {
+                continue;
+            }
+            if (registration.remainingRounds > 0) {
+                registration.remainingRounds--;
+                wheel[index].add(registration);
+                continue;
+            }
+
+            long lastActivity = registration.lastActivityNanos;
+            long idle = now - lastActivity;
+            if (idle >= idleNanos) {
+                registration.cancelled = true;
+                log.info("Device {} missed heartbeats for {} ms, evicting.", registration.key, TimeUnit.NANOSECONDS.toMillis(idle));
+                runSafely(registration.onIdle, registration.key);
+            } else if (idle >= pingNanos) {
+                runSafely(registration.pinger, registration.key);
+                schedule(registration, Math.min(now + pingNanos, lastActivity + idleNanos), now);
+            } else {
+                // Peer was active since the entry was bucketed, check again one ping interval after that
+                schedule(registration, lastActivity + pingNanos, now);
+            }
+        }
+    }
+
+    private void schedule(Registration registration, long deadlineNanos, long now) {
+        long ticksAhead = Math.max(1, (Math.max(deadlineNanos, now) - startNanos + tickNanos - 1) / tickNanos - currentTick);
+        registration.remainingRounds = (ticksAhead - 1) / wheel.length;
+        wheel[(int) ((currentTick + ticksAhead) & mask)].add(registration);
+    }
+
+    private void runSafely(Runnable action, String key) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("Heartbeat callback failed for {}: {}", key, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Handle on a watched session. {@link #touch()} is safe to call from any thread.
+     */
+    public static final class Registration {
+        private final String key;
+        private final Runnable pinger;
+        private final Runnable onIdle;
+        private final LongSupplier nanoClock;
+        private volatile long lastActivityNanos;
+        private volatile boolean cancelled;
+        // Only accessed from the wheel thread
+        private long remainingRounds;
+
+        private Registration(String key, Runnable pinger, Runnable onIdle, LongSupplier nanoClock) {
+            this.key = key;
+            this.pinger = pinger;
+            this.onIdle = onIdle;
+            this.nanoClock = nanoClock;
+            this.lastActivityNanos = nanoClock.getAsLong();
+        }
+
+        // Any inbound frame (text or pong) proves the peer is still there
+        public void touch() {
+            lastActivityNanos = nanoClock.getAsLong();
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
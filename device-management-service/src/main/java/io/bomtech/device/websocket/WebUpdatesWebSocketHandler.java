@@ -2,6 +2,9 @@ package io.bomtech.device.websocket;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
@@ -10,6 +13,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Scannable;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
@@ -24,12 +28,34 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class WebUpdatesWebSocketHandler implements WebSocketHandler {
 
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
     // Store active sessions, mapping userId to a list of sessions (multiple tabs/browsers)
     private final Map<String, List<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
     // Store sinks mapping userId to a list of sinks
     private final Map<String, List<Sinks.Many<String>>> userSinks = new ConcurrentHashMap<>();
 
+    @PostConstruct
+    public void init() {
+        Gauge.builder("device.ws.web.sessions", userSessions, sessions -> sessions.values().stream().mapToInt(List::size).sum())
+                .description("Open web client WebSocket sessions (all tabs of all users)")
+                .register(meterRegistry);
+        Gauge.builder("device.ws.web.outbound.buffered", userSinks, WebUpdatesWebSocketHandler::bufferedUpdates)
+                .description("Updates queued in web client sinks and not yet written to the socket")
+                .register(meterRegistry);
+    }
+
+    private static double bufferedUpdates(Map<String, List<Sinks.Many<String>>> userSinks) {
+        int buffered = 0;
+        for (List<Sinks.Many<String>> sinks : userSinks.values()) {
+            for (Sinks.Many<String> sink : sinks) {
+                Integer count = Scannable.from(sink).scan(Scannable.Attr.BUFFERED);
+                buffered += count == null ? 0 : count;
+            }
+        }
+        return buffered;
+    }
+
     @Override
     @NonNull
     public Mono<Void> handle(@NonNull WebSocketSession session) {
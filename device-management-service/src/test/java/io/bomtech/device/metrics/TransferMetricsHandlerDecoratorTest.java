@@ -0,0 +1,75 @@
+package io.bomtech.device.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Upload sizes counted from the body as the handler reads it.
+ */
+class TransferMetricsHandlerDecoratorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TransferMetricsHandlerDecorator decorator = new TransferMetricsHandlerDecorator(meterRegistry);
+
+    // Reads the whole body, like the multipart reader, then answers with the given status
+    private static HttpHandler consumer(HttpStatus status) {
+        return (request, response) -> DataBufferUtils.join(request.getBody())
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.fromRunnable(() -> response.setStatusCode(status)));
+    }
+
+    private static MockServerHttpRequest chunkedUpload(int... chunkSizes) {
+        return MockServerHttpRequest.post("/api/devices/dev-1/backup/upload")
+                .body(Flux.fromStream(Arrays.stream(chunkSizes).boxed())
+                        .map(size -> DefaultDataBufferFactory.sharedInstance.wrap(new byte[size])));
+    }
+
+    private DistributionSummary uploadBytes() {
+        return meterRegistry.get("device.backup.transfer.bytes").tag("direction", "upload").summary();
+    }
+
+    @Test
+    void chunkedUploadWithoutContentLengthIsCounted() {
+        MockServerHttpRequest request = chunkedUpload(1000, 2000, 500);
+        assertThat(request.getHeaders().getContentLength()).isEqualTo(-1);
+
+        decorator.apply(consumer(HttpStatus.OK)).handle(request, new MockServerHttpResponse()).block();
+
+        assertThat(uploadBytes().count()).isEqualTo(1);
+        assertThat(uploadBytes().totalAmount()).isEqualTo(3500);
+    }
+
+    @Test
+    void failedUploadIsNotRecorded() {
+        decorator.apply(consumer(HttpStatus.INTERNAL_SERVER_ERROR))
+                .handle(chunkedUpload(1000), new MockServerHttpResponse()).block();
+
+        assertThat(uploadBytes().count()).isZero();
+    }
+
+    @Test
+    void otherRequestsPassThroughUnwrapped() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/api/devices/user/me").build();
+        HttpHandler handler = (req, res) -> {
+            assertThat(req).isSameAs(request);
+            return Mono.empty();
+        };
+
+        decorator.apply(handler).handle(request, new MockServerHttpResponse()).block();
+
+        assertThat(uploadBytes().count()).isZero();
+    }
+}
@@ -0,0 +1,97 @@
+package io.bomtech.device.service;
+
+import io.bomtech.device.dto.BackupStageStats;
+import io.bomtech.device.model.BackupJob;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stage durations and nearest-rank percentiles of {@link BackupTimelineService.GroupDurations}.
+ */
+class BackupTimelineServiceTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+
+    // A job whose stages follow each other after the given delays, in milliseconds
+    private static BackupJob job(long... delaysMillis) {
+        String[] names = {"REQUESTED", "BACKING_UP", "UPLOAD_STARTED", "UPLOAD_STORED", "COMPLETED"};
+        List<BackupJob.StageEvent> stages = new ArrayList<>();
+        Instant at = T0;
+        stages.add(new BackupJob.StageEvent(names[0], at, null));
+        for (int i = 0; i < delaysMillis.length; i++) {
+            at = at.plusMillis(delaysMillis[i]);
+            stages.add(new BackupJob.StageEvent(names[i + 1], at, null));
+        }
+        BackupJob job = new BackupJob();
+        job.setStages(stages);
+        return job;
+    }
+
+    @Test
+    void nearestRankPercentiles() {
+        long[] sorted = LongStream.rangeClosed(1, 100).toArray();
+
+        assertThat(BackupTimelineService.GroupDurations.percentile(sorted, 0.50)).isEqualTo(50);
+        assertThat(BackupTimelineService.GroupDurations.percentile(sorted, 0.95)).isEqualTo(95);
+        assertThat(BackupTimelineService.GroupDurations.percentile(sorted, 0.99)).isEqualTo(99);
+    }
+
+    @Test
+    void percentilesOfFewSamplesAreActualSamples() {
+        long[] sorted = {10, 20, 30};
+
+        assertThat(BackupTimelineService.GroupDurations.percentile(sorted, 0.50)).isEqualTo(20);
+        assertThat(BackupTimelineService.GroupDurations.percentile(sorted, 0.99)).isEqualTo(30);
+        assertThat(BackupTimelineService.GroupDurations.percentile(new long[]{7}, 0.50)).isEqualTo(7);
+    }
+
+    @Test
+    void durationsAreMeasuredBetweenConsecutiveStages() {
+        BackupTimelineService.GroupDurations durations = new BackupTimelineService.GroupDurations();
+        durations.add(job(100, 2000, 300));
+
+        BackupStageStats stats = durations.toStats("all");
+
+        assertThat(stats.getJobs()).isEqualTo(1);
+        assertThat(stats.getStages().get("REQUESTED").getP50()).isEqualTo(100);
+        assertThat(stats.getStages().get("BACKING_UP").getP50()).isEqualTo(2000);
+        assertThat(stats.getStages().get("UPLOAD_STARTED").getP50()).isEqualTo(300);
+        assertThat(stats.getStages().get("TOTAL").getP50()).isEqualTo(2400);
+        assertThat(stats.getStages()).doesNotContainKey("UPLOAD_STORED"); // Last stage has no duration
+    }
+
+    @Test
+    void stagesRecordedOutOfOrderAreSortedByTimestamp() {
+        BackupJob job = job(100, 200);
+        job.setStages(new ArrayList<>(List.of(job.getStages().get(2), job.getStages().get(0), job.getStages().get(1))));
+        BackupTimelineService.GroupDurations durations = new BackupTimelineService.GroupDurations();
+        durations.add(job);
+
+        BackupStageStats stats = durations.toStats("all");
+
+        assertThat(stats.getStages().get("REQUESTED").getP50()).isEqualTo(100);
+        assertThat(stats.getStages().get("BACKING_UP").getP50()).isEqualTo(200);
+    }
+
+    @Test
+    void jobsWithFewerThanTwoStagesAreSkipped() {
+        BackupTimelineService.GroupDurations durations = new BackupTimelineService.GroupDurations();
+        durations.add(job());
+        durations.add(job(50));
+        durations.add(job(150));
+
+        BackupStageStats stats = durations.toStats("1.2.3");
+
+        assertThat(stats.getGroup()).isEqualTo("1.2.3");
+        assertThat(stats.getJobs()).isEqualTo(2);
+        assertThat(stats.getStages().get("REQUESTED").getCount()).isEqualTo(2);
+        assertThat(stats.getStages().get("REQUESTED").getP50()).isEqualTo(50);
+        assertThat(stats.getStages().get("REQUESTED").getP99()).isEqualTo(150);
+    }
+}
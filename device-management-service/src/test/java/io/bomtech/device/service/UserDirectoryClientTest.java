@@ -0,0 +1,143 @@
+package io.bomtech.device.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Batching of {@link UserDirectoryClient} against a fake user-service that knows alice and carol, with a 50 ms
+ * batch window.
+ */
+class UserDirectoryClientTest {
+
+    private static final String KNOWN = "{\"alice\":true,\"bob\":false,\"carol\":true}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicReference<Mono<ClientResponse>> answer = new AtomicReference<>(Mono.fromSupplier(() ->
+            ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(KNOWN)
+                    .build()));
+    private UserDirectoryClient client;
+
+    @BeforeEach
+    void setUp() {
+        WebClient.Builder webClient = WebClient.builder().exchangeFunction(request -> {
+            requests.incrementAndGet();
+            return answer.get();
+        });
+        client = new UserDirectoryClient(webClient, meterRegistry);
+        ReflectionTestUtils.setField(client, "batchWindow", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(client, "maxBatchSize", 100);
+        ReflectionTestUtils.setField(client, "requestTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(client, "positiveTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(client, "negativeTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(client, "maxSize", 1000L);
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.stop();
+    }
+
+    private CompletableFuture<Boolean> exists(String username) {
+        return client.exists(username).toFuture();
+    }
+
+    private DistributionSummary batchSizes() {
+        return meterRegistry.get("users.exists.batch.size").summary();
+    }
+
+    @Test
+    void lookupsWithinTheWindowShareOneRequest() {
+        CompletableFuture<Boolean> alice = exists("alice");
+        CompletableFuture<Boolean> bob = exists("bob");
+        CompletableFuture<Boolean> carol = exists("carol");
+
+        assertThat(alice.join()).isTrue();
+        assertThat(bob.join()).isFalse();
+        assertThat(carol.join()).isTrue();
+        assertThat(requests).hasValue(1);
+        assertThat(batchSizes().count()).isEqualTo(1);
+        assertThat(batchSizes().totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void concurrentLookupsOfOneNameAreSentOnce() {
+        CompletableFuture<Boolean> first = exists("alice");
+        CompletableFuture<Boolean> second = exists("alice");
+
+        assertThat(first.join()).isTrue();
+        assertThat(second.join()).isTrue();
+        assertThat(requests).hasValue(1);
+        assertThat(batchSizes().totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    void answersAreCached() {
+        assertThat(exists("alice").join()).isTrue();
+        assertThat(exists("bob").join()).isFalse();
+
+        assertThat(exists("alice").join()).isTrue();
+        assertThat(exists("bob").join()).isFalse();
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void failedRequestFailsEveryCallerOfTheBatch() {
+        answer.set(Mono.error(new IllegalStateException("user-service down")));
+
+        CompletableFuture<Boolean> alice = exists("alice");
+        CompletableFuture<Boolean> aliceAgain = exists("alice");
+        CompletableFuture<Boolean> bob = exists("bob");
+
+        assertThatThrownBy(alice::join).isInstanceOf(CompletionException.class).hasMessageContaining("user-service down");
+        assertThatThrownBy(aliceAgain::join).isInstanceOf(CompletionException.class);
+        assertThatThrownBy(bob::join).isInstanceOf(CompletionException.class);
+        assertThat(requests).hasValue(1);
+        assertThat(meterRegistry.get("users.exists.failures").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        answer.set(Mono.error(new IllegalStateException("user-service down")));
+        assertThatThrownBy(() -> exists("alice").join()).isInstanceOf(CompletionException.class);
+
+        answer.set(Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(KNOWN)
+                .build()));
+
+        assertThat(exists("alice").join()).isTrue();
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void lookupAfterShutdownFailsInsteadOfWaiting() {
+        client.stop();
+
+        assertThatThrownBy(() -> client.exists("alice").block(Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Could not queue user lookup");
+    }
+}
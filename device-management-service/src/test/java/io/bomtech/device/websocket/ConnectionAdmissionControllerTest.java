@@ -0,0 +1,62 @@
+package io.bomtech.device.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GCRA reservation at 10 sessions per second (one slot every 100 ms), burst 3 and at most 250 ms of queueing.
+ */
+class ConnectionAdmissionControllerTest {
+
+    private static final long MS = Duration.ofMillis(1).toNanos();
+    private static final long START = Duration.ofHours(1).toNanos();
+
+    private final ConnectionAdmissionController controller = new ConnectionAdmissionController(
+            new SimpleMeterRegistry(), 10, 3, Duration.ofMillis(250), Duration.ofSeconds(10), Duration.ofSeconds(20));
+
+    @Test
+    void admitsBurstWithoutWaiting() {
+        assertThat(controller.reserve(START)).isZero();
+        assertThat(controller.reserve(START)).isZero();
+        assertThat(controller.reserve(START)).isZero();
+    }
+
+    @Test
+    void queuesBeyondBurstAtTheConfiguredRate() {
+        for (int i = 0; i < 3; i++) {
+            controller.reserve(START);
+        }
+
+        assertThat(controller.reserve(START)).isEqualTo(100 * MS);
+        assertThat(controller.reserve(START)).isEqualTo(200 * MS);
+    }
+
+    @Test
+    void rejectsWhenWaitWouldExceedQueueLimitWithoutTakingASlot() {
+        for (int i = 0; i < 5; i++) {
+            controller.reserve(START);
+        }
+
+        assertThat(controller.reserve(START)).isEqualTo(-1);
+        assertThat(controller.reserve(START)).isEqualTo(-1);
+        // Rejections did not push the schedule back: 50 ms later the next slot is 250 ms away
+        assertThat(controller.reserve(START + 50 * MS)).isEqualTo(250 * MS);
+    }
+
+    @Test
+    void idlePeriodRestoresTheBurst() {
+        for (int i = 0; i < 5; i++) {
+            controller.reserve(START);
+        }
+
+        long later = START + Duration.ofSeconds(1).toNanos();
+        assertThat(controller.reserve(later)).isZero();
+        assertThat(controller.reserve(later)).isZero();
+        assertThat(controller.reserve(later)).isZero();
+        assertThat(controller.reserve(later)).isEqualTo(100 * MS);
+    }
+}
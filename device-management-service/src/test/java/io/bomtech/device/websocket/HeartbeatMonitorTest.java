@@ -0,0 +1,143 @@
+package io.bomtech.device.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the wheel by hand on a fake clock: ping every 20s, idle timeout 60s, 1s ticks and only 8 slots, so
+ * every deadline is several rotations ahead.
+ */
+class HeartbeatMonitorTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger pings = new AtomicInteger();
+    private final AtomicInteger idles = new AtomicInteger();
+    private HeartbeatMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new HeartbeatMonitor();
+        ReflectionTestUtils.setField(monitor, "pingInterval", Duration.ofSeconds(20));
+        ReflectionTestUtils.setField(monitor, "idleTimeout", Duration.ofSeconds(60));
+        ReflectionTestUtils.setField(monitor, "tickDuration", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(monitor, "wheelSize", 8);
+        ReflectionTestUtils.setField(monitor, "nanoClock", (LongSupplier) clock::get);
+        monitor.initWheel();
+    }
+
+    private HeartbeatMonitor.Registration register() {
+        return monitor.register("device-1", pings::incrementAndGet, idles::incrementAndGet);
+    }
+
+    // One tick per second up to the given time, like the ticker thread
+    private void advanceTo(long seconds) {
+        for (long s = Duration.ofNanos(clock.get()).toSeconds() + 1; s <= seconds; s++) {
+            clock.set(Duration.ofSeconds(s).toNanos());
+            monitor.advance();
+        }
+    }
+
+    @Test
+    void pingsOncePerPingInterval() {
+        register();
+
+        advanceTo(19);
+        assertThat(pings).hasValue(0);
+        advanceTo(20);
+        assertThat(pings).hasValue(1);
+        advanceTo(39);
+        assertThat(pings).hasValue(1);
+        advanceTo(40);
+        assertThat(pings).hasValue(2);
+        assertThat(idles).hasValue(0);
+    }
+
+    @Test
+    void deadlineBeyondOneRotationWaitsForItsRound() {
+        register();
+
+        // Slot of tick 20 also comes up at ticks 4 and 12
+        advanceTo(4);
+        advanceTo(12);
+        assertThat(pings).hasValue(0);
+        advanceTo(20);
+        assertThat(pings).hasValue(1);
+    }
+
+    @Test
+    void evictsOnceAfterIdleTimeout() {
+        register();
+
+        advanceTo(59);
+        assertThat(idles).hasValue(0);
+        advanceTo(60);
+        assertThat(idles).hasValue(1);
+        assertThat(pings).hasValue(2);
+
+        advanceTo(200);
+        assertThat(idles).hasValue(1);
+        assertThat(pings).hasValue(2);
+    }
+
+    @Test
+    void touchPostponesEviction() {
+        HeartbeatMonitor.Registration registration = register();
+
+        advanceTo(50);
+        registration.touch();
+
+        advanceTo(69);
+        assertThat(idles).hasValue(0);
+        assertThat(pings).hasValue(2); // At 20s and 40s
+        advanceTo(70);
+        assertThat(pings).hasValue(3); // 20s after the touch
+        advanceTo(109);
+        assertThat(idles).hasValue(0);
+        advanceTo(110);
+        assertThat(idles).hasValue(1); // 60s after the touch
+    }
+
+    @Test
+    void cancelledRegistrationIsNeitherPingedNorEvicted() {
+        HeartbeatMonitor.Registration registration = register();
+
+        advanceTo(10);
+        registration.cancel();
+        advanceTo(200);
+
+        assertThat(pings).hasValue(0);
+        assertThat(idles).hasValue(0);
+    }
+
+    @Test
+    void cancelBeforeFirstTickIsHonoured() {
+        register().cancel();
+
+        advanceTo(200);
+
+        assertThat(pings).hasValue(0);
+        assertThat(idles).hasValue(0);
+    }
+
+    @Test
+    void delayedTickCatchesUpOnEveryElapsedTick() {
+        register();
+        AtomicInteger ticks = new AtomicInteger();
+        monitor.addTickListener(ticks::incrementAndGet);
+
+        // The wheel thread stalled for a whole idle timeout: one call processes all 60 ticks
+        clock.set(Duration.ofSeconds(60).toNanos());
+        monitor.advance();
+
+        assertThat(idles).hasValue(1);
+        assertThat(ticks).hasValue(1);
+    }
+}
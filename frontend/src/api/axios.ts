@@ -80,10 +80,11 @@ apiClient.interceptors.response.use(
         // Assume /auth/refresh endpoint exists on the backend
         const refreshResponse = await axios.post(`${API_BASE_URL}${AUTH_REFRESH_URL}`, { refreshToken });
         const newAccessToken = refreshResponse.data.accessToken;
-        // const newRefreshToken = refreshResponse.data.refreshToken; // If backend sends a new one
+        // Refresh tokens are single-use: the old one is spent, keep the replacement
+        const newRefreshToken = refreshResponse.data.refreshToken;
 
         localStorage.setItem('authToken', newAccessToken);
-        // if (newRefreshToken) localStorage.setItem('refreshToken', newRefreshToken);
+        if (newRefreshToken) localStorage.setItem('refreshToken', newRefreshToken);
 
         apiClient.defaults.headers.common['Authorization'] = `Bearer ${newAccessToken}`;
         originalRequest.headers['Authorization'] = `Bearer ${newAccessToken}`;
@@ -0,0 +1,27 @@
+import apiClient from './axios';
+import type { Dashboard, DashboardSection } from '@/types';
+
+// Profile, devices and accounts in one request; each section succeeds or fails on its own
+export const getDashboard = async (
+  sections?: Array<'profile' | 'devices' | 'accounts'>
+): Promise<Dashboard> => {
+  const response = await apiClient.get<Dashboard>('/dashboard', {
+    params: sections ? { sections: sections.join(',') } : undefined,
+  });
+  return response.data;
+};
+
+// The section's data, or an Error describing why it is missing
+export const sectionData = <T>(section: DashboardSection<T> | undefined, name: string): T => {
+  if (!section) throw new Error(`${name} not loaded`);
+  switch (section.status) {
+    case 'ok':
+      return section.data as T;
+    case 'timeout':
+      throw new Error(`${name} took too long to load`);
+    case 'too_large':
+      throw new Error(`${name} is too large to show here`);
+    default:
+      throw new Error(`${name} could not be loaded (HTTP ${section.code})`);
+  }
+};
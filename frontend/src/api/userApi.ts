@@ -1,12 +1,19 @@
 import apiClient from './axios';
-import type { UserSafeDto } from '@/types';
+import type { UserPage, UserSafeDto } from '@/types';
 
 export const getCurrentUser = async (): Promise<UserSafeDto> => {
   const response = await apiClient.get<UserSafeDto>('/users/me');
   return response.data;
 };
 
-export const getAllUsers = async (): Promise<UserSafeDto[]> => {
-  const response = await apiClient.get<UserSafeDto[]>('/users/all');
+// Admin only. Pass the previous page's nextCursor as `after` to continue.
+export const getUsersPage = async (after?: string, limit = 50): Promise<UserPage> => {
+  const response = await apiClient.get<UserPage>('/users', { params: { after, limit } });
+  return response.data;
+};
+
+// Admin only. Users whose username, email or name starts with the prefix.
+export const searchUsers = async (prefix: string, limit = 10): Promise<UserSafeDto[]> => {
+  const response = await apiClient.get<UserSafeDto[]>('/users/search', { params: { prefix, limit } });
   return response.data;
 };
@@ -33,4 +33,24 @@ export interface UserSafeDto {
   username: string;
   fullname?: string; // Optional, adjust if your DTO has it
   role: string;
-}
\ No newline at end of file
+}
+
+// Based on user-service/src/main/java/io/bomtech/user/dto/UserPage.java
+export interface UserPage {
+  users: UserSafeDto[];
+  nextCursor: string | null; // null on the last page
+}
+
+// Based on api-gateway/src/main/java/io/bomtech/gateway/controller/DashboardController.java
+export interface DashboardSection<T> {
+  status: 'ok' | 'error' | 'timeout' | 'too_large';
+  data?: T; // Present when status is 'ok'
+  code?: number; // Downstream HTTP status when status is 'error'
+  limit?: number; // Byte budget when status is 'too_large'
+}
+
+export interface Dashboard {
+  profile?: DashboardSection<UserSafeDto>;
+  devices?: DashboardSection<Device[]>;
+  accounts?: DashboardSection<BackedUpAccount[]>;
+}
@@ -0,0 +1,258 @@
+package io.bomtech.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The simulated devices and their WebSocket sessions. Each device stays connected for the whole run:
+ * when its session ends it reconnects, after the delay the service asked for (admission retry-after,
+ * drain reconnect command) or a short jittered backoff.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DeviceFleet {
+
+    private static final int CLOSE_TRY_AGAIN_LATER = 1013;
+    private static final String[] DEVICE_MODELS = {"SM-A525F", "SM-G991B", "Redmi Note 12", "CPH2239", "Pixel 7", "vivo 1906"};
+    private static final String[] OS_VERSIONS = {"Android 11", "Android 12", "Android 13", "Android 14"};
+    private static final String[] APP_VERSIONS = {"2.3.1", "2.4.0", "2.4.2"};
+
+    private final LoadStats stats;
+    private final DeviceMessages messages;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.loadgen.device-url:ws://localhost:8083/ws/device}")
+    private String deviceUrl;
+
+    @Value("${app.loadgen.auth-token:}")
+    private String authToken;
+
+    @Value("${app.loadgen.devices:1000}")
+    private int deviceCount;
+
+    @Value("${app.loadgen.devices-per-user:5}")
+    private int devicesPerUser;
+
+    @Value("${app.loadgen.connect-rate:100}")
+    private int connectRate;
+
+    @Value("${app.loadgen.backup-step-delay:500ms}")
+    private Duration backupStepDelay;
+
+    private final ReactorNettyWebSocketClient client = new ReactorNettyWebSocketClient();
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+    // The current session (or reconnect delay) of each device, by index in devices
+    private final List<Disposable.Swap> deviceSessions = new ArrayList<>();
+    private Disposable connecting;
+    private volatile boolean running;
+
+    /**
+     * Creates the fleet and opens its sessions at the configured connect rate (sessions per second).
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < deviceCount; i++) {
+            devices.add(newDevice(i));
+            deviceSessions.add(Disposables.swap());
+        }
+        log.info("Connecting {} devices of {} users to {} at {}/s", deviceCount,
+                (deviceCount + devicesPerUser - 1) / devicesPerUser, deviceUrl, connectRate);
+
+        Duration period = Duration.ofNanos(1_000_000_000L / Math.max(1, connectRate));
+        connecting = Flux.range(0, deviceCount)
+                .delayElements(period)
+                .subscribe(this::runSessions);
+    }
+
+    public void stop() {
+        running = false;
+        if (connecting != null) {
+            connecting.dispose();
+        }
+        deviceSessions.forEach(Disposable::dispose);
+        devices.forEach(SimulatedDevice::detach);
+    }
+
+    /**
+     * @return A random connected device, or null if none was found after a few tries.
+     */
+    public SimulatedDevice randomConnectedDevice() {
+        if (devices.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < 8; attempt++) {
+            SimulatedDevice device = devices.get(random.nextInt(devices.size()));
+            if (device.isConnected()) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    private SimulatedDevice newDevice(int index) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String deviceId = String.format("loadgen-%06d", index);
+        return new SimulatedDevice(
+            deviceId,
+            DEVICE_MODELS[random.nextInt(DEVICE_MODELS.length)],
+            OS_VERSIONS[random.nextInt(OS_VERSIONS.length)],
+            APP_VERSIONS[random.nextInt(APP_VERSIONS.length)],
+            "loadgen-user-" + (index / Math.max(1, devicesPerUser)),
+            String.valueOf(8000000000000000000L + index),
+            "Load Test " + index,
+            "849" + String.format("%08d", index)
+        );
+    }
+
+    // Keeps one device connected until the run stops
+    private void runSessions(int index) {
+        if (!running) {
+            return;
+        }
+        SimulatedDevice device = devices.get(index);
+        ReconnectDelay reconnectDelay = new ReconnectDelay();
+        deviceSessions.get(index).update(runSession(device, reconnectDelay)
+                .onErrorResume(e -> {
+                    stats.recordConnectError();
+                    log.debug("Session of device {} failed: {}", device.getDeviceId(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then(Mono.defer(() -> Mono.delay(reconnectDelay.orBackoff())))
+                .subscribe(tick -> runSessions(index)));
+    }
+
+    private Mono<Void> runSession(SimulatedDevice device, ReconnectDelay reconnectDelay) {
+        URI uri = UriComponentsBuilder.fromUriString(deviceUrl)
+                .queryParam("deviceId", device.getDeviceId())
+                .queryParam("deviceName", device.getDeviceName())
+                .queryParam("os", device.getOs())
+                .queryParam("appVersion", device.getAppVersion())
+                .encode()
+                .build()
+                .toUri();
+        HttpHeaders headers = new HttpHeaders();
+        // Without a token the service is addressed directly and trusts the gateway's user header
+        headers.add("X-User-Name", device.getUserId());
+        if (StringUtils.hasText(authToken)) {
+            headers.setBearerAuth(authToken);
+        }
+
+        long startNanos = System.nanoTime();
+        return client.execute(uri, headers, session -> {
+            stats.recordConnect(startNanos);
+            Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+            device.attach(outbound);
+
+            session.closeStatus().subscribe(status -> onClose(device, status, reconnectDelay));
+
+            Mono<Void> input = session.receive()
+                    .map(WebSocketMessage::getPayloadAsText)
+                    .doOnNext(text -> onServerMessage(device, session, text, reconnectDelay))
+                    .doFinally(signal -> {
+                        device.detach();
+                        stats.recordDisconnect();
+                    })
+                    .then();
+            Mono<Void> output = session.send(outbound.asFlux().map(session::textMessage));
+            return Mono.zip(input, output).then();
+        });
+    }
+
+    private void onClose(SimulatedDevice device, CloseStatus status, ReconnectDelay reconnectDelay) {
+        if (status.getCode() == CLOSE_TRY_AGAIN_LATER) {
+            stats.recordAdmissionRejection();
+            String reason = status.getReason();
+            if (reason != null && reason.startsWith("retry-after=")) {
+                reconnectDelay.set(Duration.ofSeconds(Long.parseLong(reason.substring("retry-after=".length()))));
+            }
+        }
+        log.debug("Session of device {} closed: {}", device.getDeviceId(), status);
+    }
+
+    // Commands from the service; the device answers the way the app does
+    private void onServerMessage(SimulatedDevice device, WebSocketSession session, String text, ReconnectDelay reconnectDelay) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(text);
+        } catch (Exception e) {
+            // Pings and other non-JSON frames
+            return;
+        }
+        String command = root.path("command").asText();
+        if (!StringUtils.hasText(command)) {
+            return;
+        }
+        stats.recordCommand(device.takeExpectedCommand(command));
+
+        switch (command) {
+            case "start_backup" -> {
+                String jobId = root.hasNonNull("jobId") ? root.path("jobId").asText() : null;
+                replyInSteps(device, DeviceMessages.BACKUP_STATUS_UPDATE,
+                    messages.backupStatus(device, "BACKING_UP", "Backing up messages", jobId),
+                    messages.backupStatus(device, "UPLOADING", "Uploading backup", jobId),
+                    messages.backupStatus(device, "COMPLETED", "Backup completed", jobId));
+            }
+            case "export_friends" -> replyInSteps(device, DeviceMessages.FRIENDS_EXPORT_STATUS_UPDATE,
+                    messages.friendsExportStatus(device, "IN_PROGRESS", false),
+                    messages.friendsExportStatus(device, "COMPLETED", true));
+            case "refresh_account" -> send(device, DeviceMessages.DEVICE_STATUS_UPDATE, messages.deviceStatus(device));
+            case "reconnect" -> {
+                reconnectDelay.set(Duration.ofMillis(root.path("payload").path("delayMs").asLong(0)));
+                session.close(CloseStatus.GOING_AWAY).subscribe();
+            }
+            default -> log.debug("Device {} ignoring unknown command {}", device.getDeviceId(), command);
+        }
+    }
+
+    // Replies are dropped if the device disconnects in between, like on a real phone
+    private void replyInSteps(SimulatedDevice device, String type, String... replies) {
+        Flux.fromArray(replies)
+                .delayElements(backupStepDelay)
+                .subscribe(reply -> send(device, type, reply));
+    }
+
+    public void send(SimulatedDevice device, String type, String message) {
+        if (device.send(message)) {
+            stats.recordMessageSent(type);
+        }
+    }
+
+    // Delay before the next session of a device, if the service asked for one
+    private static final class ReconnectDelay {
+        private volatile Duration requested;
+
+        void set(Duration delay) {
+            requested = delay;
+        }
+
+        Duration orBackoff() {
+            Duration delay = requested;
+            requested = null;
+            return delay != null ? delay : Duration.ofMillis(1000 + ThreadLocalRandom.current().nextLong(4000));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.bomtech.loadgen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the messages the Android app sends over its WebSocket, in the format DeviceWebSocketHandler parses.
+ */
+@Component
+@RequiredArgsConstructor
+public class DeviceMessages {
+
+    public static final String DEVICE_STATUS_UPDATE = "DEVICE_STATUS_UPDATE";
+    public static final String BACKUP_STATUS_UPDATE = "BACKUP_STATUS_UPDATE";
+    public static final String FRIENDS_EXPORT_STATUS_UPDATE = "FRIENDS_EXPORT_STATUS_UPDATE";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.loadgen.friends-per-export:200}")
+    private int friendsPerExport;
+
+    private volatile String friendsData;
+
+    public String deviceStatus(SimulatedDevice device) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("accountId", device.getAccountId());
+        payload.put("phoneNumber", device.getPhoneNumber());
+        return message(DEVICE_STATUS_UPDATE, payload);
+    }
+
+    public String backupStatus(SimulatedDevice device, String status, String statusMessage, String jobId) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("status", status);
+        payload.put("message", statusMessage);
+        payload.put("accountId", device.getAccountId());
+        payload.put("accountName", device.getAccountName());
+        payload.put("phoneNumber", device.getPhoneNumber());
+        payload.put("backupPath", "/sdcard/ZaloBackup/" + device.getAccountId() + ".zip");
+        if (jobId != null) {
+            payload.put("jobId", jobId);
+        }
+        return message(BACKUP_STATUS_UPDATE, payload);
+    }
+
+    public String friendsExportStatus(SimulatedDevice device, String status, boolean withData) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("status", status);
+        payload.put("message", withData ? "Exported " + friendsPerExport + " friends" : "Exporting friends");
+        payload.put("accountId", device.getAccountId());
+        payload.put("phoneNumber", device.getPhoneNumber());
+        payload.put("data", withData ? friendsData() : "");
+        return message(FRIENDS_EXPORT_STATUS_UPDATE, payload);
+    }
+
+    // The app sends the friend list as a JSON string inside the payload; it is the same for every device
+    private String friendsData() {
+        String data = friendsData;
+        if (data == null) {
+            List<Map<String, String>> friends = new ArrayList<>(friendsPerExport);
+            for (int i = 0; i < friendsPerExport; i++) {
+                friends.add(Map.of(
+                    "id", String.valueOf(7000000000000000000L + i),
+                    "name", "Friend " + i,
+                    "phone", "849" + (10000000 + i)
+                ));
+            }
+            data = write(friends);
+            friendsData = data;
+        }
+        return data;
+    }
+
+    private String message(String type, Map<String, Object> payload) {
+        return write(Map.of("type", type, "payload", payload));
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            // Cannot happen for maps of strings
+            throw new IllegalStateException(e);
+        }
+    }
+}
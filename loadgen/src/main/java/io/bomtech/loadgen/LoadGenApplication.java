@@ -0,0 +1,13 @@
+package io.bomtech.loadgen;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class LoadGenApplication {
+
+    public static void main(String[] args) {
+        // LoadRunner blocks for the configured duration; exit afterwards so the Netty threads don't keep the JVM alive
+        System.exit(SpringApplication.exit(SpringApplication.run(LoadGenApplication.class, args)));
+    }
+}
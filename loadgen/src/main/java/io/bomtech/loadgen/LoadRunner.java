@@ -0,0 +1,79 @@
+package io.bomtech.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Runs one load test for the configured duration, logs progress, then prints the summary and writes it as JSON
+ * so runs can be compared. The devices scenario connects the fleet and drives its traffic; the login scenario
+ * runs LoginLoad against auth-service.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoadRunner implements CommandLineRunner {
+
+    private final DeviceFleet fleet;
+    private final TrafficDriver trafficDriver;
+    private final LoginLoad loginLoad;
+    private final LoadStats stats;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.loadgen.scenario:devices}")
+    private String scenario;
+
+    @Value("${app.loadgen.duration:5m}")
+    private Duration duration;
+
+    @Value("${app.loadgen.report-interval:10s}")
+    private Duration reportInterval;
+
+    @Value("${app.loadgen.report-file:}")
+    private String reportFile;
+
+    @Override
+    public void run(String... args) throws Exception {
+        log.info("Load run ({}) starting for {}", scenario, duration);
+        if ("login".equals(scenario)) {
+            loginLoad.start();
+        } else {
+            fleet.start();
+            trafficDriver.start();
+        }
+        Disposable progress = Flux.interval(reportInterval)
+                .subscribe(tick -> log.info(stats.progressLine()));
+
+        Mono.delay(duration).block();
+
+        progress.dispose();
+        // Stopping a part that wasn't started does nothing
+        loginLoad.stop();
+        trafficDriver.stop();
+        Map<String, Object> summary = stats.summary();
+        summary.put("scenario", scenario);
+        fleet.stop();
+
+        String json = objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(summary);
+        log.info("Load run finished:\n{}", json);
+        Path path = Path.of(StringUtils.hasText(reportFile) ? reportFile
+                : "loadgen-report-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        Files.writeString(path, json);
+        log.info("Summary written to {}", path.toAbsolutePath());
+    }
+}
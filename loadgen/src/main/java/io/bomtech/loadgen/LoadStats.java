@@ -0,0 +1,175 @@
+package io.bomtech.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one load run. Latencies are recorded in microseconds.
+ */
+@Component
+public class LoadStats {
+
+    // Up to one hour, 3 significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final Histogram connectLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final Histogram commandRoundTrip = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final Histogram uploadLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final Histogram loginLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder connectErrors = new LongAdder();
+    private final LongAdder admissionRejections = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final Map<String, LongAdder> messagesSent = new ConcurrentHashMap<>();
+    private final LongAdder commandsReceived = new LongAdder();
+    private final LongAdder commandErrors = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadErrors = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder loginErrors = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+    // Snapshot for the per-interval rates of the progress line
+    private long lastReportNanos = startNanos;
+    private long lastReportMessages;
+
+    public void recordConnect(long startNanos) {
+        connectLatency.recordValue(micros(startNanos));
+        connects.increment();
+        connected.incrementAndGet();
+    }
+
+    public void recordDisconnect() {
+        connected.decrementAndGet();
+        disconnects.increment();
+    }
+
+    public void recordConnectError() {
+        connectErrors.increment();
+    }
+
+    public void recordAdmissionRejection() {
+        admissionRejections.increment();
+    }
+
+    public void recordMessageSent(String type) {
+        messagesSent.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public void recordCommand(long triggerNanos) {
+        commandsReceived.increment();
+        if (triggerNanos > 0) {
+            commandRoundTrip.recordValue(micros(triggerNanos));
+        }
+    }
+
+    public void recordCommandError() {
+        commandErrors.increment();
+    }
+
+    public void recordUpload(long startNanos, long bytes) {
+        uploadLatency.recordValue(micros(startNanos));
+        uploads.increment();
+        uploadedBytes.add(bytes);
+    }
+
+    public void recordUploadError() {
+        uploadErrors.increment();
+    }
+
+    public void recordLogin(long startNanos) {
+        loginLatency.recordValue(micros(startNanos));
+        logins.increment();
+    }
+
+    public void recordLoginError() {
+        loginErrors.increment();
+    }
+
+    public int getConnected() {
+        return connected.get();
+    }
+
+    /**
+     * One-line progress report; rates are over the time since the previous call.
+     */
+    public synchronized String progressLine() {
+        long now = System.nanoTime();
+        long messages = totalMessagesSent();
+        double seconds = Math.max(1e-3, (now - lastReportNanos) / 1e9);
+        double rate = (messages - lastReportMessages) / seconds;
+        lastReportNanos = now;
+        lastReportMessages = messages;
+        return String.format("connected=%d connects=%d rejected=%d connectErrors=%d msgs/s=%.1f commands=%d commandErrors=%d uploads=%d uploadErrors=%d logins=%d loginErrors=%d connect.p99=%.1fms rtt.p99=%.1fms login.p99=%.1fms",
+                connected.get(), connects.sum(), admissionRejections.sum(), connectErrors.sum(), rate,
+                commandsReceived.sum(), commandErrors.sum(), uploads.sum(), uploadErrors.sum(),
+                logins.sum(), loginErrors.sum(),
+                millis(connectLatency, 99), millis(commandRoundTrip, 99), millis(loginLatency, 99));
+    }
+
+    /**
+     * Totals and percentiles of the whole run, in a shape suited for JSON.
+     */
+    public Map<String, Object> summary() {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        long messages = totalMessagesSent();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("elapsedSeconds", elapsed.toMillis() / 1000.0);
+        summary.put("connectedAtEnd", connected.get());
+        summary.put("connects", connects.sum());
+        summary.put("connectErrors", connectErrors.sum());
+        summary.put("admissionRejections", admissionRejections.sum());
+        summary.put("disconnects", disconnects.sum());
+        Map<String, Long> byType = new LinkedHashMap<>();
+        messagesSent.forEach((type, count) -> byType.put(type, count.sum()));
+        summary.put("messagesSent", byType);
+        summary.put("messagesPerSecond", messages / Math.max(1e-3, elapsed.toMillis() / 1000.0));
+        summary.put("commandsReceived", commandsReceived.sum());
+        summary.put("commandErrors", commandErrors.sum());
+        summary.put("uploads", uploads.sum());
+        summary.put("uploadErrors", uploadErrors.sum());
+        summary.put("uploadedBytes", uploadedBytes.sum());
+        summary.put("logins", logins.sum());
+        summary.put("loginErrors", loginErrors.sum());
+        summary.put("loginsPerSecond", logins.sum() / Math.max(1e-3, elapsed.toMillis() / 1000.0));
+        summary.put("connectLatencyMs", percentiles(connectLatency));
+        summary.put("commandRoundTripMs", percentiles(commandRoundTrip));
+        summary.put("uploadLatencyMs", percentiles(uploadLatency));
+        summary.put("loginLatencyMs", percentiles(loginLatency));
+        return summary;
+    }
+
+    private long totalMessagesSent() {
+        return messagesSent.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("count", histogram.getTotalCount());
+        values.put("p50", millis(histogram, 50));
+        values.put("p95", millis(histogram, 95));
+        values.put("p99", millis(histogram, 99));
+        values.put("max", histogram.getMaxValue() / 1000.0);
+        return values;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static long micros(long startNanos) {
+        return Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+}
@@ -0,0 +1,98 @@
+package io.bomtech.loadgen;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Login scenario: registers a pool of users, then keeps a fixed number of logins in flight against auth-service
+ * (closed loop), so throughput and latency of different auth-service builds can be compared at the same
+ * concurrency and heap size.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoginLoad {
+
+    private final LoadStats stats;
+    private final WebClient.Builder webClientBuilder;
+
+    @Value("${app.loadgen.login.url:http://localhost:8081}")
+    private String authUrl;
+
+    @Value("${app.loadgen.login.users:100}")
+    private int userCount;
+
+    @Value("${app.loadgen.login.concurrency:64}")
+    private int concurrency;
+
+    @Value("${app.loadgen.login.password:loadgen-password}")
+    private String password;
+
+    private Disposable workers;
+
+    public void start() {
+        WebClient client = webClientBuilder.baseUrl(authUrl).build();
+        // Users left over from an earlier run are answered with 400, which is fine
+        Long registered = Flux.range(0, userCount)
+                .flatMap(index -> register(client, index), 16)
+                .filter(Boolean::booleanValue)
+                .count()
+                .block();
+        log.info("Registered {} of {} login users at {}; running {} concurrent logins", registered, userCount, authUrl, concurrency);
+
+        workers = Flux.range(0, concurrency)
+                .flatMap(worker -> Mono.defer(() -> login(client)).repeat(), concurrency)
+                .subscribe();
+    }
+
+    public void stop() {
+        if (workers != null) {
+            workers.dispose();
+        }
+    }
+
+    private Mono<Boolean> register(WebClient client, int index) {
+        String username = username(index);
+        return client.post()
+                .uri("/auth/register")
+                .bodyValue(Map.of("username", username, "password", password,
+                        "email", username + "@loadgen.local", "fullname", "Load Test " + index))
+                .retrieve()
+                .toBodilessEntity()
+                .thenReturn(true)
+                .onErrorResume(e -> {
+                    log.debug("Registering {} failed: {}", username, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    private Mono<Void> login(WebClient client) {
+        String username = username(ThreadLocalRandom.current().nextInt(userCount));
+        long startNanos = System.nanoTime();
+        return client.post()
+                .uri("/auth/login")
+                .bodyValue(Map.of("username", username, "password", password))
+                .retrieve()
+                .toBodilessEntity()
+                .doOnNext(response -> stats.recordLogin(startNanos))
+                .then()
+                .onErrorResume(e -> {
+                    stats.recordLoginError();
+                    log.debug("Login of {} failed: {}", username, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private static String username(int index) {
+        return "loadgen-login-" + index;
+    }
+}
@@ -0,0 +1,99 @@
+package io.bomtech.loadgen;
+
+import lombok.Getter;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One simulated phone: its handshake identity, the logged-in Zalo account, and the outbound sink of
+ * its current WebSocket session (null while disconnected).
+ */
+@Getter
+public class SimulatedDevice {
+
+    private final String deviceId;
+    private final String deviceName;
+    private final String os;
+    private final String appVersion;
+    private final String userId;
+    private final String accountId;
+    private final String accountName;
+    private final String phoneNumber;
+
+    private volatile Sinks.Many<String> outbound;
+    // Trigger times (System.nanoTime) of commands requested over HTTP and not yet received, per command name
+    private final Map<String, Queue<Long>> pendingCommands = new ConcurrentHashMap<>();
+
+    public SimulatedDevice(String deviceId, String deviceName, String os, String appVersion, String userId,
+                           String accountId, String accountName, String phoneNumber) {
+        this.deviceId = deviceId;
+        this.deviceName = deviceName;
+        this.os = os;
+        this.appVersion = appVersion;
+        this.userId = userId;
+        this.accountId = accountId;
+        this.accountName = accountName;
+        this.phoneNumber = phoneNumber;
+    }
+
+    public boolean isConnected() {
+        return outbound != null;
+    }
+
+    void attach(Sinks.Many<String> sink) {
+        this.outbound = sink;
+    }
+
+    void detach() {
+        Sinks.Many<String> sink = outbound;
+        outbound = null;
+        if (sink != null) {
+            sink.tryEmitComplete();
+        }
+    }
+
+    /**
+     * Queues a message on the current session.
+     *
+     * @return false if the device is not connected.
+     */
+    public boolean send(String message) {
+        Sinks.Many<String> sink = outbound;
+        if (sink == null) {
+            return false;
+        }
+        try {
+            // Traffic drivers and command replies emit from different threads
+            sink.emitNext(message, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+            return true;
+        } catch (Sinks.EmissionException e) {
+            return false;
+        }
+    }
+
+    public void expectCommand(String command, long triggerNanos) {
+        pendingCommands.computeIfAbsent(command, key -> new ConcurrentLinkedQueue<>()).add(triggerNanos);
+    }
+
+    public void cancelExpectedCommand(String command, long triggerNanos) {
+        Queue<Long> pending = pendingCommands.get(command);
+        if (pending != null) {
+            pending.remove(triggerNanos);
+        }
+    }
+
+    /**
+     * @return The trigger time of the oldest pending request for this command, or 0 if it was not requested
+     *         by this load generator (e.g. commands sent by the service itself).
+     */
+    long takeExpectedCommand(String command) {
+        Queue<Long> pending = pendingCommands.get(command);
+        Long triggerNanos = pending != null ? pending.poll() : null;
+        return triggerNanos != null ? triggerNanos : 0;
+    }
+}
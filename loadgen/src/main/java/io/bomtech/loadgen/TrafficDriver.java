@@ -0,0 +1,161 @@
+package io.bomtech.loadgen;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Replays device traffic against the connected fleet at fixed rates (per second, across all devices):
+ * status messages over the WebSockets, backup uploads over HTTP, and dashboard-triggered commands whose
+ * arrival on the device gives the command round-trip time.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TrafficDriver {
+
+    // Rates are applied in slices of this length, so rates above 1000/s still work
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final String[] BACKUP_PROGRESS = {"BACKING_UP", "UPLOADING"};
+
+    private final DeviceFleet fleet;
+    private final DeviceMessages messages;
+    private final LoadStats stats;
+    private final WebClient.Builder webClientBuilder;
+
+    @Value("${app.loadgen.http-url:http://localhost:8083}")
+    private String httpUrl;
+
+    @Value("${app.loadgen.auth-token:}")
+    private String authToken;
+
+    @Value("${app.loadgen.rates.device-status:20}")
+    private double deviceStatusRate;
+
+    @Value("${app.loadgen.rates.backup-status:10}")
+    private double backupStatusRate;
+
+    @Value("${app.loadgen.rates.friends-export:1}")
+    private double friendsExportRate;
+
+    @Value("${app.loadgen.rates.uploads:1}")
+    private double uploadRate;
+
+    @Value("${app.loadgen.rates.commands:2}")
+    private double commandRate;
+
+    @Value("${app.loadgen.upload-size:1MB}")
+    private DataSize uploadSize;
+
+    private final Disposable.Composite drivers = Disposables.composite();
+    private WebClient webClient;
+    private byte[] uploadContent;
+
+    public void start() {
+        webClient = webClientBuilder.baseUrl(httpUrl).build();
+        uploadContent = new byte[(int) uploadSize.toBytes()];
+        ThreadLocalRandom.current().nextBytes(uploadContent);
+
+        atRate(deviceStatusRate, device ->
+                fleet.send(device, DeviceMessages.DEVICE_STATUS_UPDATE, messages.deviceStatus(device)));
+        atRate(backupStatusRate, device -> {
+            String status = BACKUP_PROGRESS[ThreadLocalRandom.current().nextInt(BACKUP_PROGRESS.length)];
+            fleet.send(device, DeviceMessages.BACKUP_STATUS_UPDATE, messages.backupStatus(device, status, "In progress", null));
+        });
+        atRate(friendsExportRate, device ->
+                fleet.send(device, DeviceMessages.FRIENDS_EXPORT_STATUS_UPDATE, messages.friendsExportStatus(device, "COMPLETED", true)));
+        atRate(uploadRate, this::upload);
+        atRate(commandRate, this::triggerCommand);
+        log.info("Traffic started: device-status={}/s backup-status={}/s friends-export={}/s uploads={}/s ({}) commands={}/s",
+                deviceStatusRate, backupStatusRate, friendsExportRate, uploadRate, uploadSize, commandRate);
+    }
+
+    public void stop() {
+        drivers.dispose();
+    }
+
+    // Runs the action on a random connected device, perSecond times per second on average
+    private void atRate(double perSecond, Consumer<SimulatedDevice> action) {
+        if (perSecond <= 0) {
+            return;
+        }
+        double perTick = perSecond * TICK.toNanos() / 1e9;
+        double[] credit = {0};
+        drivers.add(Flux.interval(TICK).subscribe(tick -> {
+            credit[0] += perTick;
+            while (credit[0] >= 1) {
+                credit[0]--;
+                SimulatedDevice device = fleet.randomConnectedDevice();
+                if (device != null) {
+                    action.accept(device);
+                }
+            }
+        }));
+    }
+
+    private void upload(SimulatedDevice device) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", new ByteArrayResource(uploadContent) {
+            @Override
+            public String getFilename() {
+                return device.getAccountId() + ".zip";
+            }
+        });
+        long startNanos = System.nanoTime();
+        webClient.post()
+                .uri("/api/devices/{deviceId}/backup/upload", device.getDeviceId())
+                .headers(headers -> authenticate(headers, device))
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .toBodilessEntity()
+                .subscribe(
+                    response -> stats.recordUpload(startNanos, uploadContent.length),
+                    error -> {
+                        stats.recordUploadError();
+                        log.debug("Upload for device {} failed: {}", device.getDeviceId(), error.getMessage());
+                    });
+    }
+
+    // Same requests the dashboard makes; the command then travels back over the device's WebSocket
+    private void triggerCommand(SimulatedDevice device) {
+        boolean backup = ThreadLocalRandom.current().nextBoolean();
+        String command = backup ? "start_backup" : "export_friends";
+        String path = backup ? "/api/devices/{deviceId}/backup" : "/api/devices/{deviceId}/export-friends";
+        long triggerNanos = System.nanoTime();
+        device.expectCommand(command, triggerNanos);
+        webClient.post()
+                .uri(path, device.getDeviceId())
+                .headers(headers -> authenticate(headers, device))
+                .retrieve()
+                .toBodilessEntity()
+                .subscribe(
+                    null,
+                    error -> {
+                        device.cancelExpectedCommand(command, triggerNanos);
+                        stats.recordCommandError();
+                        log.debug("Command {} for device {} failed: {}", command, device.getDeviceId(), error.getMessage());
+                    });
+    }
+
+    private void authenticate(HttpHeaders headers, SimulatedDevice device) {
+        headers.add("X-User-Name", device.getUserId());
+        if (StringUtils.hasText(authToken)) {
+            headers.setBearerAuth(authToken);
+        }
+    }
+}
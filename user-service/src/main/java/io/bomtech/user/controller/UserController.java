@@ -1,5 +1,7 @@
 package io.bomtech.user.controller;
 
+import io.bomtech.user.dto.UserPage;
+import io.bomtech.user.dto.UserSyncRecord;
 import io.bomtech.user.model.User;
 import io.bomtech.user.model.UserSafeDto;
 import io.bomtech.user.service.UserService;
@@ -8,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/users")
@@ -15,6 +18,33 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_EXISTS_BATCH = 1000;
+
+    // Admin listing, one page at a time: GET /users?limit=50, then GET /users?after={nextCursor}&limit=50
+    @GetMapping
+    public ResponseEntity<?> listUsers(@RequestHeader("X-User-Role") String role,
+                                       @RequestParam(required = false) String after,
+                                       @RequestParam(defaultValue = "50") int limit) {
+        if (!"ADMIN".equalsIgnoreCase(role)) {
+            return ResponseEntity.status(org.springframework.http.HttpStatus.FORBIDDEN).body("Access denied");
+        }
+        UserPage page = userService.getUsersPage(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return ResponseEntity.ok(page);
+    }
+
+    // Typeahead over username, email and full name; answered from memory
+    @GetMapping("/search")
+    public ResponseEntity<?> searchUsers(@RequestHeader("X-User-Role") String role,
+                                         @RequestParam String prefix,
+                                         @RequestParam(defaultValue = "10") int limit) {
+        if (!"ADMIN".equalsIgnoreCase(role)) {
+            return ResponseEntity.status(org.springframework.http.HttpStatus.FORBIDDEN).body("Access denied");
+        }
+        return ResponseEntity.ok(userService.searchUsers(prefix, Math.max(1, Math.min(limit, MAX_SUGGESTIONS))));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getUser(@PathVariable String id) {
         return ResponseEntity.ok(userService.getUserById(id));
@@ -26,15 +56,31 @@ public class UserController {
         return ResponseEntity.ok(createdUser);
     }
 
+    // Idempotent batch creation for auth-service's outbox relay; blocked at the gateway
+    @PostMapping("/bulk")
+    public ResponseEntity<Map<String, String>> ingestUsers(@RequestBody List<UserSyncRecord> records) {
+        return ResponseEntity.ok(userService.ingestUsers(records));
+    }
+
+    // Bulk existence check for other services (device-management-service transfers); blocked at the gateway
+    @PostMapping("/exists")
+    public ResponseEntity<?> usernamesExist(@RequestBody List<String> usernames) {
+        if (usernames.size() > MAX_EXISTS_BATCH) {
+            return ResponseEntity.badRequest().body("At most " + MAX_EXISTS_BATCH + " usernames per request");
+        }
+        return ResponseEntity.ok(userService.usernamesExist(usernames));
+    }
+
     @GetMapping("/me")
     public ResponseEntity<?> getCurrentUser(@RequestHeader("X-User-Name") String username) {
-        return userService.getUserByUsername(username)
+        return userService.getCurrentUser(username)
             .map(user -> {
-                return ResponseEntity.ok(new UserSafeDto(user));
+                return ResponseEntity.ok(user);
             })
             .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    // Loads every user; prefer GET /users (paged) and /users/search
     @GetMapping("/all")
     public ResponseEntity<?> getAllUsers(@RequestHeader("X-User-Role") String role) {
         if (!"ADMIN".equalsIgnoreCase(role)) {
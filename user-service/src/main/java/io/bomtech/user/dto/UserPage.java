@@ -0,0 +1,12 @@
+package io.bomtech.user.dto;
+
+import io.bomtech.user.model.UserSafeDto;
+
+import java.util.List;
+
+/**
+ * One page of {@code GET /users}. Pass {@code nextCursor} as {@code after} to get the next page; it is null on
+ * the last page.
+ */
+public record UserPage(List<UserSafeDto> users, String nextCursor) {
+}
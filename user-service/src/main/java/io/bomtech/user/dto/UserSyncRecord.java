@@ -0,0 +1,8 @@
+package io.bomtech.user.dto;
+
+/**
+ * One user profile in a {@code POST /users/bulk} request from auth-service's outbox relay. The idempotency key
+ * identifies the registration event; {@code id} is the user's id in auth-service and becomes the id here.
+ */
+public record UserSyncRecord(String idempotencyKey, String id, String username, String email, String fullname, String role) {
+}
@@ -1,12 +1,14 @@
 package io.bomtech.user.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "users")
 public class User {
     @Id
     private String id;
+    @Indexed // Every request's identity lookup goes by username (X-User-Name)
     private String username;
     private String email;
     private String fullname;
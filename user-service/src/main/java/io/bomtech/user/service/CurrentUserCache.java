@@ -0,0 +1,80 @@
+package io.bomtech.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.bomtech.user.model.UserSafeDto;
+import io.bomtech.user.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of {@link UserSafeDto} by username, for {@code /users/me} and other lookups of the
+ * identity the gateway puts in X-User-Name.
+ * <p>
+ * Unknown usernames are not cached, so a profile delivered by auth-service shortly after registration is seen
+ * at once. Entries are evicted when this instance writes the user and expire after {@code app.user-cache.ttl},
+ * which bounds staleness for writes made elsewhere. Hit ratio is exported as {@code cache.gets{cache=users.me}},
+ * lookup time as {@code users.me.lookup{result}}.
+ */
+@Component
+public class CurrentUserCache {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.user-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.user-cache.ttl:1m}")
+    private Duration ttl;
+
+    private Cache<String, UserSafeDto> users;
+    private Timer hitTimer;
+    private Timer missTimer;
+
+    @PostConstruct
+    public void init() {
+        users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users.me");
+        hitTimer = Timer.builder("users.me.lookup").tag("result", "hit").register(meterRegistry);
+        missTimer = Timer.builder("users.me.lookup").tag("result", "miss").register(meterRegistry);
+    }
+
+    public Optional<UserSafeDto> get(String username) {
+        long start = System.nanoTime();
+        boolean[] loaded = {false};
+        // Concurrent misses for one username share the query; a null result is not stored
+        UserSafeDto user = users.get(username, key -> {
+            loaded[0] = true;
+            return userRepository.findByUsername(key).map(UserSafeDto::new).orElse(null);
+        });
+        (loaded[0] ? missTimer : hitTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return Optional.ofNullable(user);
+    }
+
+    // The user was written: drop it under its username and under any previous username of the same id
+    public void invalidate(String id, String username) {
+        if (username != null) {
+            users.invalidate(username);
+        }
+        if (id != null) {
+            users.asMap().values().removeIf(user -> id.equals(user.getId()));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.bomtech.user.service;
+
+import io.bomtech.user.model.User;
+import io.bomtech.user.model.UserSafeDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over username, email and full name (and each word of it) for the typeahead of
+ * {@code GET /users/search}.
+ * <p>
+ * Terms are lower-cased and stripped of diacritics ("Nguyễn" is found by "nguy"), and kept in a sorted map, so
+ * a lookup is a range scan from the prefix. Users created or changed through this instance are indexed at once;
+ * the whole index is rebuilt from the database every {@code app.user-search.rebuild-interval} to pick up users
+ * written by other instances.
+ */
+@Component
+@Slf4j
+public class UserSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORDS = Pattern.compile("\\s+");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private volatile Index index = new Index();
+    // Users indexed while a rebuild is reading the database; applied to the new index before it goes live
+    private List<User> indexedDuringRebuild;
+
+    // After startup, so an unreachable database doesn't hold up the context; searches are empty until then
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.user-search.rebuild-interval:PT5M}",
+            initialDelayString = "${app.user-search.rebuild-interval:PT5M}")
+    public void rebuild() {
+        synchronized (this) {
+            indexedDuringRebuild = new ArrayList<>();
+        }
+        Index fresh = new Index();
+        Query query = new Query();
+        query.fields().include("username", "email", "fullname", "role");
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            users.forEach(fresh::put);
+        } catch (RuntimeException e) {
+            log.warn("Rebuilding the user search index failed, keeping the current one: {}", e.getMessage());
+            synchronized (this) {
+                indexedDuringRebuild = null;
+            }
+            return;
+        }
+        synchronized (this) {
+            indexedDuringRebuild.forEach(fresh::put);
+            indexedDuringRebuild = null;
+            index = fresh;
+        }
+        log.info("User search index rebuilt with {} users", fresh.size());
+    }
+
+    public synchronized void put(User user) {
+        index.put(user);
+        if (indexedDuringRebuild != null) {
+            indexedDuringRebuild.add(user);
+        }
+    }
+
+    /**
+     * Users with a username, email, full name or name word starting with the prefix, ordered by the matching
+     * term, at most {@code limit}.
+     */
+    public List<UserSafeDto> search(String prefix, int limit) {
+        String term = normalize(prefix);
+        if (term.isEmpty()) {
+            return List.of();
+        }
+        Map<String, UserSafeDto> matches = new LinkedHashMap<>();
+        // Keys are term + '\0' + user id, so every key with the prefix sorts below prefix + '\uffff'
+        for (UserSafeDto user : index.entries.subMap(term, true, term + '\uffff', false).values()) {
+            matches.putIfAbsent(user.getId(), user);
+            if (matches.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(matches.values());
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = DIACRITICS.matcher(Normalizer.normalize(value.trim(), Normalizer.Form.NFD)).replaceAll("");
+        // \u0111/\u0110 (d with stroke) have no decomposition
+        return stripped.replace('\u0111', 'd').replace('\u0110', 'D').toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Index {
+        private final ConcurrentSkipListMap<String, UserSafeDto> entries = new ConcurrentSkipListMap<>();
+        private final Map<String, List<String>> keysByUser = new ConcurrentHashMap<>();
+
+        void put(User user) {
+            if (user.getId() == null) {
+                return;
+            }
+            List<String> previous = keysByUser.remove(user.getId());
+            if (previous != null) {
+                previous.forEach(entries::remove);
+            }
+            UserSafeDto dto = new UserSafeDto(user);
+            List<String> keys = new ArrayList<>();
+            for (String term : terms(user)) {
+                String key = term + '\0' + user.getId();
+                entries.put(key, dto);
+                keys.add(key);
+            }
+            keysByUser.put(user.getId(), keys);
+        }
+
+        int size() {
+            return keysByUser.size();
+        }
+
+        private static List<String> terms(User user) {
+            List<String> terms = new ArrayList<>();
+            addTerm(terms, user.getUsername());
+            addTerm(terms, user.getEmail());
+            if (StringUtils.hasText(user.getFullname())) {
+                addTerm(terms, user.getFullname());
+                for (String word : WORDS.split(user.getFullname().trim())) {
+                    addTerm(terms, word);
+                }
+            }
+            return terms;
+        }
+
+        private static void addTerm(List<String> terms, String value) {
+            String term = normalize(value);
+            if (!term.isEmpty() && !terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+    }
+}
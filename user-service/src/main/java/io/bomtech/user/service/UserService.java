@@ -1,21 +1,53 @@
 package io.bomtech.user.service;
 
+import com.mongodb.bulk.BulkWriteError;
+import io.bomtech.user.dto.UserPage;
+import io.bomtech.user.dto.UserSyncRecord;
 import io.bomtech.user.model.User;
 import io.bomtech.user.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import io.bomtech.user.model.UserSafeDto; // Add this import
 import java.util.List; // Add this import
 import java.util.stream.Collectors; // Add this import
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class UserService {
+    // Results of ingestUsers, per idempotency key
+    public static final String APPLIED = "APPLIED";
+    public static final String DUPLICATE = "DUPLICATE"; // Already applied earlier; the stored user is left as it is
+    public static final String REJECTED = "REJECTED"; // Invalid record; retrying won't help
+    public static final String FAILED = "FAILED"; // Worth retrying
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserSearchIndex searchIndex;
+
+    @Autowired
+    private CurrentUserCache currentUserCache;
+
     public User getUserById(String id) {
         return userRepository.findById(id).orElseThrow(() -> new RuntimeException("User not found"));
     }
@@ -24,8 +56,60 @@ public class UserService {
         return userRepository.findByUsername(username);
     }
 
+    // Served from memory for repeated requests of the same user
+    public Optional<UserSafeDto> getCurrentUser(String username) {
+        return currentUserCache.get(username);
+    }
+
     public User createUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        currentUserCache.invalidate(saved.getId(), saved.getUsername());
+        searchIndex.put(saved);
+        return saved;
+    }
+
+    /**
+     * Users ordered by id, starting after the given id (null for the first page). Uses the _id index, so every
+     * page costs the same however deep it is, and reads only the fields of {@link UserSafeDto}.
+     */
+    public UserPage getUsersPage(String after, int limit) {
+        Query query = new Query();
+        if (StringUtils.hasText(after)) {
+            query.addCriteria(Criteria.where("id").gt(after));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "id"))
+                .limit(limit + 1); // One extra tells whether there is another page
+        query.fields().include("username", "email", "fullname", "role");
+        List<UserSafeDto> users = mongoTemplate.find(query, User.class).stream()
+                .map(UserSafeDto::new)
+                .collect(Collectors.toList());
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
+        List<UserSafeDto> page = users.subList(0, limit);
+        return new UserPage(page, page.get(limit - 1).getId());
+    }
+
+    /**
+     * Which of the given usernames belong to a user, with one indexed query reading only the username field.
+     *
+     * @return Every requested username, mapped to whether it exists.
+     */
+    public Map<String, Boolean> usernamesExist(List<String> usernames) {
+        Set<String> requested = usernames.stream().filter(StringUtils::hasText).collect(Collectors.toSet());
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        requested.forEach(username -> results.put(username, false));
+        if (requested.isEmpty()) {
+            return results;
+        }
+        Query query = new Query(Criteria.where("username").in(requested));
+        query.fields().include("username");
+        mongoTemplate.find(query, User.class).forEach(user -> results.put(user.getUsername(), true));
+        return results;
+    }
+
+    public List<UserSafeDto> searchUsers(String prefix, int limit) {
+        return searchIndex.search(prefix, limit);
     }
 
     public List<UserSafeDto> getAllUsersSafe() {
@@ -34,4 +118,73 @@ public class UserService {
                 .map(UserSafeDto::new)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates the users of a batch that don't exist yet, with one lookup and one unordered bulk insert.
+     * Redelivered records are reported as DUPLICATE without overwriting later changes to the user.
+     *
+     * @return The result of each record, keyed by its idempotency key.
+     */
+    public Map<String, String> ingestUsers(List<UserSyncRecord> records) {
+        Map<String, String> results = new LinkedHashMap<>();
+        List<UserSyncRecord> valid = new ArrayList<>();
+        for (UserSyncRecord record : records) {
+            if (!StringUtils.hasText(record.idempotencyKey())) {
+                continue; // Can't be reported back
+            }
+            if (!StringUtils.hasText(record.id()) || !StringUtils.hasText(record.username())) {
+                results.put(record.idempotencyKey(), REJECTED);
+            } else {
+                valid.add(record);
+            }
+        }
+
+        Set<String> existingIds = new HashSet<>();
+        userRepository.findAllById(valid.stream().map(UserSyncRecord::id).toList())
+                .forEach(user -> existingIds.add(user.getId()));
+        List<UserSyncRecord> inserts = new ArrayList<>();
+        for (UserSyncRecord record : valid) {
+            // existingIds.add also catches the same user twice in one batch
+            if (existingIds.add(record.id())) {
+                inserts.add(record);
+            } else {
+                results.put(record.idempotencyKey(), DUPLICATE);
+            }
+        }
+        if (inserts.isEmpty()) {
+            return results;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        List<User> users = inserts.stream().map(UserService::toUser).toList();
+        users.forEach(bulk::insert);
+        inserts.forEach(record -> results.put(record.idempotencyKey(), APPLIED));
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // Unordered: every other insert of the batch went through
+            for (BulkWriteError error : e.getErrors()) {
+                UserSyncRecord record = inserts.get(error.getIndex());
+                // Inserted by a concurrent delivery of the same record in the meantime
+                results.put(record.idempotencyKey(), error.getCode() == DUPLICATE_KEY_ERROR ? DUPLICATE : FAILED);
+            }
+        }
+        for (int i = 0; i < inserts.size(); i++) {
+            if (APPLIED.equals(results.get(inserts.get(i).idempotencyKey()))) {
+                currentUserCache.invalidate(users.get(i).getId(), users.get(i).getUsername());
+                searchIndex.put(users.get(i));
+            }
+        }
+        return results;
+    }
+
+    private static User toUser(UserSyncRecord record) {
+        User user = new User();
+        user.setId(record.id());
+        user.setUsername(record.username());
+        user.setEmail(record.email());
+        user.setFullname(record.fullname());
+        user.setRole(record.role());
+        return user;
+    }
+}
@@ -0,0 +1,109 @@
+package io.bomtech.user.service;
+
+import io.bomtech.user.model.User;
+import io.bomtech.user.model.UserSafeDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserSearchIndexTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UserSearchIndex();
+        ReflectionTestUtils.setField(index, "mongoTemplate", mongoTemplate);
+    }
+
+    private static User user(String id, String username, String email, String fullname) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setFullname(fullname);
+        user.setRole("USER");
+        return user;
+    }
+
+    private List<String> usernames(String prefix, int limit) {
+        return index.search(prefix, limit).stream().map(UserSafeDto::getUsername).toList();
+    }
+
+    @Test
+    void normalizesCaseAndVietnameseDiacritics() {
+        assertThat(UserSearchIndex.normalize("  Nguyễn Đức ")).isEqualTo("nguyen duc");
+        assertThat(UserSearchIndex.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void findsUsersByPrefixOfAnyTerm() {
+        index.put(user("1", "alice", "alice@example.com", "Nguyễn Thị Lan"));
+        index.put(user("2", "bob", "b.tran@example.com", "Trần Văn Bình"));
+
+        assertThat(usernames("ali", 10)).containsExactly("alice");
+        assertThat(usernames("b.tr", 10)).containsExactly("bob");
+        assertThat(usernames("nguy", 10)).containsExactly("alice"); // Full name, without diacritics
+        assertThat(usernames("Lan", 10)).containsExactly("alice"); // A later word of the name
+        assertThat(usernames("binh", 10)).containsExactly("bob");
+        assertThat(usernames("carol", 10)).isEmpty();
+        assertThat(usernames("  ", 10)).isEmpty();
+    }
+
+    @Test
+    void returnsEachUserOnceUpToTheLimit() {
+        index.put(user("1", "an", "an@example.com", "An An"));
+        index.put(user("2", "anh", "anh@example.com", null));
+        index.put(user("3", "andrew", "andrew@example.com", null));
+
+        assertThat(usernames("an", 10)).containsExactlyInAnyOrder("an", "anh", "andrew");
+        assertThat(usernames("an", 2)).hasSize(2).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void reindexingAUserDropsItsOldTerms() {
+        index.put(user("1", "alice", "alice@example.com", null));
+        index.put(user("1", "alicia", "alicia@example.com", null));
+
+        assertThat(usernames("alice", 10)).isEmpty();
+        assertThat(usernames("alicia", 10)).containsExactly("alicia");
+    }
+
+    @Test
+    void rebuildKeepsUsersIndexedWhileItReadsTheDatabase() {
+        index.put(user("0", "stale", "stale@example.com", null));
+        when(mongoTemplate.stream(any(Query.class), eq(User.class))).thenAnswer(call -> {
+            // Registered through this instance while the rebuild is streaming
+            index.put(user("2", "bob", "bob@example.com", null));
+            return Stream.of(user("1", "alice", "alice@example.com", null));
+        });
+
+        index.rebuild();
+
+        assertThat(usernames("alice", 10)).containsExactly("alice");
+        assertThat(usernames("bob", 10)).containsExactly("bob");
+        assertThat(usernames("stale", 10)).isEmpty(); // No longer in the database
+    }
+
+    @Test
+    void failedRebuildKeepsTheCurrentIndex() {
+        index.put(user("1", "alice", "alice@example.com", null));
+        when(mongoTemplate.stream(any(Query.class), eq(User.class))).thenThrow(new IllegalStateException("down"));
+
+        index.rebuild();
+
+        assertThat(usernames("alice", 10)).containsExactly("alice");
+    }
+}
@@ -0,0 +1,137 @@
+package io.bomtech.user.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.bomtech.user.dto.UserSyncRecord;
+import io.bomtech.user.model.User;
+import io.bomtech.user.repository.UserRepository;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Per-record results of {@link UserService#ingestUsers}, with the repository and the bulk insert mocked.
+ */
+class UserServiceIngestTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+    private final UserSearchIndex searchIndex = mock(UserSearchIndex.class);
+    private final CurrentUserCache currentUserCache = mock(CurrentUserCache.class);
+    private UserService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new UserService();
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "searchIndex", searchIndex);
+        ReflectionTestUtils.setField(service, "currentUserCache", currentUserCache);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulk);
+        when(userRepository.findAllById(anyIterable())).thenReturn(List.of());
+    }
+
+    private static UserSyncRecord record(String key, String id, String username) {
+        return new UserSyncRecord(key, id, username, username + "@example.com", null, "USER");
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    // The unordered bulk insert fails for the inserts at these positions with these codes
+    private void failInserts(BulkWriteError... errors) {
+        MongoBulkWriteException cause = new MongoBulkWriteException(BulkWriteResult.unacknowledged(), List.of(errors),
+                null, new ServerAddress());
+        when(bulk.execute()).thenThrow(new BulkOperationException("bulk insert failed", cause));
+    }
+
+    private static BulkWriteError error(int index, int code) {
+        return new BulkWriteError(code, "write error", new BsonDocument(), index);
+    }
+
+    @Test
+    void newRecordsAreApplied() {
+        Map<String, String> results = service.ingestUsers(List.of(record("k1", "u1", "alice"), record("k2", "u2", "bob")));
+
+        assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of("k1", UserService.APPLIED, "k2", UserService.APPLIED));
+        verify(bulk, times(2)).insert(any(User.class));
+        verify(searchIndex, times(2)).put(any(User.class));
+    }
+
+    @Test
+    void invalidRecordsAreRejectedAndRecordsWithoutKeyIgnored() {
+        Map<String, String> results = service.ingestUsers(List.of(
+                record("k1", null, "alice"),
+                record("k2", "u2", " "),
+                record(null, "u3", "carol")));
+
+        assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of("k1", UserService.REJECTED, "k2", UserService.REJECTED));
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(User.class));
+    }
+
+    @Test
+    void storedUsersAndRepeatsWithinTheBatchAreDuplicates() {
+        when(userRepository.findAllById(anyIterable())).thenReturn(List.of(user("u1")));
+
+        Map<String, String> results = service.ingestUsers(List.of(
+                record("k1", "u1", "alice"),
+                record("k2", "u2", "bob"),
+                record("k3", "u2", "bob")));
+
+        assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "k1", UserService.DUPLICATE, "k2", UserService.APPLIED, "k3", UserService.DUPLICATE));
+        verify(bulk, times(1)).insert(any(User.class));
+    }
+
+    @Test
+    void duplicateKeyErrorOfTheBulkInsertIsADuplicate() {
+        failInserts(error(1, 11000));
+
+        Map<String, String> results = service.ingestUsers(List.of(record("k1", "u1", "alice"), record("k2", "u2", "bob")));
+
+        assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of("k1", UserService.APPLIED, "k2", UserService.DUPLICATE));
+    }
+
+    @Test
+    void otherBulkErrorsFailOnlyTheirRecords() {
+        failInserts(error(0, 121), error(2, 11000)); // Document validation failure, duplicate key
+
+        Map<String, String> results = service.ingestUsers(List.of(
+                record("k1", "u1", "alice"),
+                record("k2", "u2", "bob"),
+                record("k3", "u3", "carol")));
+
+        assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "k1", UserService.FAILED, "k2", UserService.APPLIED, "k3", UserService.DUPLICATE));
+        // Only the user that was actually inserted reaches the search index and the cache
+        ArgumentCaptor<User> indexed = ArgumentCaptor.forClass(User.class);
+        verify(searchIndex).put(indexed.capture());
+        assertThat(indexed.getValue().getId()).isEqualTo("u2");
+        verify(currentUserCache).invalidate("u2", "bob");
+        verify(currentUserCache, never()).invalidate(eq("u1"), any());
+    }
+}